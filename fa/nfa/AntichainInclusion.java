@@ -0,0 +1,167 @@
+package fa.nfa;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Checks language inclusion between two NFAs with the forward antichain
+ * algorithm. The left automaton is explored state by state while the
+ * right one is tracked as a set of states (a macro-state, as in subset
+ * construction). A pair (p, S) fails when p is final and S holds no final
+ * state. If (p, S) has been seen, any later (p, S') with S' a superset of S
+ * cannot fail sooner and is pruned, so only the antichain of minimal
+ * macro-states per left state is ever stored.
+ */
+class AntichainInclusion {
+
+    /**
+     * A (left state, right macro-state) pair and how it was reached.
+     */
+    private static class Node {
+        final NFAState left;
+        final BitSet right;
+        final Node parent;
+        final char via;
+
+        Node(NFAState left, BitSet right, Node parent, char via) {
+            this.left = left;
+            this.right = right;
+            this.parent = parent;
+            this.via = via;
+        }
+    }
+
+    private final NFA left;
+    private final NFA right;
+    private final List<NFAState> rightStates;
+    private final Map<NFAState, Integer> rightIndex = new HashMap<>();
+    private final BitSet rightFinal = new BitSet();
+    private final List<BitSet> rightClosures = new ArrayList<>();
+
+    AntichainInclusion(NFA left, NFA right) {
+        this.left = left;
+        this.right = right;
+        rightStates = new ArrayList<>(right.getStates());
+        for (NFAState state : rightStates) {
+            rightIndex.put(state, rightIndex.size());
+        }
+        for (NFAState state : rightStates) {
+            BitSet closure = new BitSet();
+            for (NFAState member : right.eClosure(state)) {
+                closure.set(rightIndex.get(member));
+            }
+            rightClosures.add(closure);
+            if (right.getFinalStates().contains(state)) {
+                rightFinal.set(rightIndex.get(state));
+            }
+        }
+    }
+
+    /**
+     * Searches for a string accepted by the left automaton but not by the
+     * right one. Epsilon moves cost nothing and are explored first, so the
+     * string found is short, though pruning means it is not always the
+     * shortest.
+     *
+     * @return the counterexample, or null if the inclusion holds
+     */
+    String counterexample() {
+        if (left.getStartState() == null) {
+            return null;
+        }
+        BitSet start = new BitSet();
+        if (right.getStartState() != null) {
+            start = rightClosures.get(rightIndex.get(right.getStartState()));
+        }
+
+        Map<NFAState, List<BitSet>> antichain = new HashMap<>();
+        Deque<Node> deque = new ArrayDeque<>();
+        Node root = new Node(left.getStartState(), start, null, 'e');
+        insert(antichain, root);
+        deque.add(root);
+        while (!deque.isEmpty()) {
+            Node node = deque.poll();
+            if (left.getFinalStates().contains(node.left) && !node.right.intersects(rightFinal)) {
+                return witness(node);
+            }
+
+            // Left epsilon moves keep the right macro-state as it is.
+            for (NFAState next : node.left.getToStates('e')) {
+                Node child = new Node(next, node.right, node, 'e');
+                if (left.canStillAccept(next) && insert(antichain, child)) {
+                    deque.addFirst(child);
+                }
+            }
+            for (char symbol : left.getSigma()) {
+                if (symbol == 'e' || node.left.getToStates(symbol).isEmpty()) {
+                    continue;
+                }
+                BitSet post = post(node.right, symbol);
+                for (NFAState next : node.left.getToStates(symbol)) {
+                    Node child = new Node(next, post, node, symbol);
+                    if (left.canStillAccept(next) && insert(antichain, child)) {
+                        deque.addLast(child);
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Computes the ε-closed set of right states reached from set on symbol.
+     */
+    private BitSet post(BitSet set, char symbol) {
+        BitSet result = new BitSet();
+        for (int i = set.nextSetBit(0); i >= 0; i = set.nextSetBit(i + 1)) {
+            for (NFAState target : rightStates.get(i).getToStates(symbol)) {
+                result.or(rightClosures.get(rightIndex.get(target)));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds a node to the antichain unless a smaller macro-state for the same
+     * left state is already there; drops the entries it subsumes.
+     *
+     * @return true if the node is new and must be explored
+     */
+    private static boolean insert(Map<NFAState, List<BitSet>> antichain, Node node) {
+        List<BitSet> minimal = antichain.computeIfAbsent(node.left, k -> new ArrayList<>());
+        for (BitSet seen : minimal) {
+            if (isSubset(seen, node.right)) {
+                return false;
+            }
+        }
+        for (Iterator<BitSet> it = minimal.iterator(); it.hasNext();) {
+            if (isSubset(node.right, it.next())) {
+                it.remove();
+            }
+        }
+        minimal.add(node.right);
+        return true;
+    }
+
+    private static boolean isSubset(BitSet a, BitSet b) {
+        BitSet rest = (BitSet) a.clone();
+        rest.andNot(b);
+        return rest.isEmpty();
+    }
+
+    private static String witness(Node node) {
+        StringBuilder builder = new StringBuilder();
+        for (Node n = node; n.parent != null; n = n.parent) {
+            if (n.via != 'e') {
+                builder.append(n.via);
+            }
+        }
+        return builder.reverse().toString();
+    }
+}
@@ -0,0 +1,271 @@
+package fa.nfa;
+
+import java.util.Arrays;
+
+/**
+ * Re-validates an edited buffer without re-reading all of it. A full run
+ * records the active-state set every interval characters. After an edit
+ * the run resumes at the last checkpoint before the edit, and once it is
+ * past the edited text it compares its active set with the checkpoints of
+ * the previous run: as soon as one matches, the rest of the old run is
+ * reused as is.
+ *
+ * The text is kept in a gap buffer and the checkpoints in a gap array,
+ * both with their gap at the last edit. Checkpoints after the gap store
+ * their distance from the end of the text, which an edit before them
+ * does not change, so nothing past the edit is copied or shifted. The
+ * cost of an edit is therefore proportional to the edit, the distance
+ * from the previous edit and the distance until the runs agree again,
+ * not to the size of the buffer.
+ */
+public class CheckpointedMatcher {
+
+    private final CompiledNFA compiled;
+    private final int interval;
+
+    private final GapBuffer text = new GapBuffer();
+    // Checkpoint positions in increasing order and the active sets there.
+    // Entries [0, front) hold positions, entries [back, capacity) hold
+    // distances from the end of the text; between them is the gap.
+    private int[] positions = new int[16];
+    private int[][] sets = new int[16][];
+    private int front;
+    private int back = 16;
+    private int[] finalSet;
+    private int lastWork;
+
+    /**
+     * A character buffer with a movable gap, so inserting or deleting at
+     * the position of the previous edit costs only the edited characters.
+     */
+    private static class GapBuffer {
+        private char[] chars = new char[16];
+        private int gapStart;
+        private int gapEnd = 16;
+
+        int length() {
+            return chars.length - (gapEnd - gapStart);
+        }
+
+        char charAt(int index) {
+            return index < gapStart ? chars[index] : chars[index + gapEnd - gapStart];
+        }
+
+        void replace(int position, int removed, String inserted) {
+            moveGap(position);
+            gapEnd += removed;
+            int n = inserted.length();
+            if (gapEnd - gapStart < n) {
+                int tail = chars.length - gapEnd;
+                char[] grown = new char[Math.max(chars.length * 2, gapStart + n + tail + 16)];
+                System.arraycopy(chars, 0, grown, 0, gapStart);
+                System.arraycopy(chars, gapEnd, grown, grown.length - tail, tail);
+                gapEnd = grown.length - tail;
+                chars = grown;
+            }
+            inserted.getChars(0, n, chars, gapStart);
+            gapStart += n;
+        }
+
+        private void moveGap(int position) {
+            if (position < gapStart) {
+                int n = gapStart - position;
+                System.arraycopy(chars, position, chars, gapEnd - n, n);
+                gapStart -= n;
+                gapEnd -= n;
+            } else if (position > gapStart) {
+                int n = position - gapStart;
+                System.arraycopy(chars, gapEnd, chars, gapStart, n);
+                gapStart += n;
+                gapEnd += n;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return new StringBuilder(length()).append(chars, 0, gapStart)
+                    .append(chars, gapEnd, chars.length - gapEnd).toString();
+        }
+    }
+
+    /**
+     * @param compiled - the automaton
+     * @param interval - characters between checkpoints, at least 1
+     */
+    public CheckpointedMatcher(CompiledNFA compiled, int interval) {
+        if (interval < 1) {
+            throw new IllegalArgumentException("interval must be positive");
+        }
+        this.compiled = compiled;
+        this.interval = interval;
+        reset("");
+    }
+
+    /**
+     * @param nfa      - the automaton, compiled once up front
+     * @param interval - characters between checkpoints, at least 1
+     */
+    public CheckpointedMatcher(NFA nfa, int interval) {
+        this(CompiledNFA.compile(nfa), interval);
+    }
+
+    /**
+     * Replaces the whole buffer and checks it from the start
+     *
+     * @param buffer - the new buffer
+     * @return true if the buffer is accepted
+     */
+    public boolean reset(String buffer) {
+        text.replace(0, text.length(), buffer);
+        Arrays.fill(sets, null);
+        front = 0;
+        back = positions.length;
+        finalSet = run(0, compiled.start(), -1);
+        return isAccepted();
+    }
+
+    /**
+     * Replaces removed characters at position with inserted and checks the
+     * edited buffer
+     *
+     * @param position - where the edit starts
+     * @param removed  - how many characters are deleted there
+     * @param inserted - the text inserted there
+     * @return true if the edited buffer is accepted
+     */
+    public boolean edit(int position, int removed, String inserted) {
+        int length = text.length();
+        if (position < 0 || removed < 0 || position + removed > length) {
+            throw new IndexOutOfBoundsException("edit [" + position + ", " + (position + removed)
+                    + ") outside buffer of length " + length);
+        }
+        int editEnd = position + removed;
+
+        // Move the gap so the checkpoints before it are exactly those at or
+        // before the edit, converting only the checkpoints it passes.
+        while (front > 0 && positions[front - 1] > position) {
+            front--;
+            back--;
+            positions[back] = length - positions[front];
+            sets[back] = sets[front];
+            sets[front] = null;
+        }
+        while (back < positions.length && length - positions[back] <= position) {
+            positions[front] = length - positions[back];
+            sets[front] = sets[back];
+            sets[back] = null;
+            front++;
+            back++;
+        }
+        // Old checkpoints inside the edited text can no longer match; those
+        // at or after its end keep their distance from the end of the text.
+        while (back < positions.length && length - positions[back] < editEnd) {
+            sets[back++] = null;
+        }
+
+        // Resume from the last checkpoint; run adds it back.
+        front--;
+        int resume = positions[front];
+        int[] active = sets[front];
+        sets[front] = null;
+
+        text.replace(position, removed, inserted);
+        int[] oldFinal = finalSet;
+        finalSet = run(resume, active, position + inserted.length());
+        if (finalSet == null) {
+            finalSet = oldFinal;
+        }
+        return isAccepted();
+    }
+
+    /**
+     * @return true if the current buffer is accepted
+     */
+    public boolean isAccepted() {
+        boolean epsilon = text.length() == 1 && text.charAt(0) == 'e';
+        return compiled.isAccepting(epsilon ? compiled.start() : finalSet);
+    }
+
+    /**
+     * Returns a copy of the current buffer
+     *
+     * @return the current buffer
+     */
+    public String getText() {
+        return text.toString();
+    }
+
+    /**
+     * @return how many characters the last check had to simulate
+     */
+    public int getLastWork() {
+        return lastWork;
+    }
+
+    /**
+     * Simulates the text from position start with the given active set,
+     * recording a checkpoint every interval characters. Once the position
+     * reaches converge (-1 never), the active set is compared with the old
+     * checkpoints after the gap; on a match they are kept as they are and
+     * null is returned to signal that the old final set still holds.
+     *
+     * @return the active set at the end of the text, or null on convergence
+     */
+    private int[] run(int start, int[] active, int converge) {
+        lastWork = 0;
+        add(start, active);
+        int length = text.length();
+        for (int i = start; i < length && active.length > 0; i++) {
+            active = compiled.next(active, text.charAt(i));
+            lastWork++;
+            int position = i + 1;
+            if (active.length == 0) {
+                // An empty set stays empty, so later edits resume from here
+                // and stop at once.
+                add(position, active);
+                break;
+            }
+
+            if (converge >= 0 && position >= converge) {
+                // Old checkpoints the run has passed are replaced by its own.
+                while (back < positions.length && length - positions[back] < position) {
+                    sets[back++] = null;
+                }
+                if (back < positions.length && length - positions[back] == position
+                        && Arrays.equals(active, sets[back])) {
+                    return null;
+                }
+            }
+            if ((position - start) % interval == 0) {
+                add(position, active);
+            }
+        }
+        while (back < positions.length) {
+            sets[back++] = null;
+        }
+        return active;
+    }
+
+    private void add(int position, int[] set) {
+        if (front > 0 && positions[front - 1] == position) {
+            sets[front - 1] = set;
+            return;
+        }
+        if (front == back) {
+            int capacity = positions.length;
+            int tail = capacity - back;
+            int[] grownPositions = new int[capacity * 2];
+            int[][] grownSets = new int[capacity * 2][];
+            System.arraycopy(positions, 0, grownPositions, 0, front);
+            System.arraycopy(sets, 0, grownSets, 0, front);
+            System.arraycopy(positions, back, grownPositions, capacity * 2 - tail, tail);
+            System.arraycopy(sets, back, grownSets, capacity * 2 - tail, tail);
+            positions = grownPositions;
+            sets = grownSets;
+            back = capacity * 2 - tail;
+        }
+        positions[front] = position;
+        sets[front] = set;
+        front++;
+    }
+}
@@ -0,0 +1,281 @@
+package fa.nfa;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * A bounded, thread-safe LRU cache of compiled automata. Entries are keyed
+ * by a canonical structural hash of the NFA, so two automata built
+ * separately from the same definition share one compiled form.
+ *
+ * The cache is bounded both by entry count and by total weight (for
+ * compiled NFAs, their size in bytes). Concurrent requests for the same
+ * missing key compile it only once; the other callers wait for that
+ * result.
+ *
+ * @param <V> the compiled form
+ */
+public class CompiledAutomatonCache<V> {
+
+    /**
+     * Cached value and the weight it was charged with.
+     */
+    private static class Entry<V> {
+        final V value;
+        final long weight;
+
+        Entry(V value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    private final Function<NFA, V> compiler;
+    private final ToLongFunction<V> weigher;
+    private final int maxEntries;
+    private final long maxWeight;
+
+    // Guarded by this. Access order makes the first entry the least
+    // recently used one.
+    private final LinkedHashMap<String, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, CompletableFuture<V>> loading = new HashMap<>();
+    private long weight;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param compiler   - builds the compiled form of an NFA
+     * @param weigher    - the cost of keeping a compiled form, e.g. bytes
+     * @param maxEntries - the most entries kept at once
+     * @param maxWeight  - the most total weight kept at once
+     */
+    public CompiledAutomatonCache(Function<NFA, V> compiler, ToLongFunction<V> weigher, int maxEntries,
+            long maxWeight) {
+        if (maxEntries < 1 || maxWeight < 1) {
+            throw new IllegalArgumentException("cache bounds must be positive");
+        }
+        this.compiler = compiler;
+        this.weigher = weigher;
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * Creates a cache of {@link CompiledNFA}s weighed by their table size
+     *
+     * @param maxEntries - the most automata kept at once
+     * @param maxBytes   - the most off-heap bytes kept at once
+     * @return the cache
+     */
+    public static CompiledAutomatonCache<CompiledNFA> forCompiledNFA(int maxEntries, long maxBytes) {
+        return new CompiledAutomatonCache<>(CompiledNFA::compile, CompiledNFA::getSizeInBytes, maxEntries, maxBytes);
+    }
+
+    /**
+     * Returns the compiled form of nfa, compiling it on a miss
+     *
+     * @param nfa - the automaton
+     * @return the shared compiled form
+     */
+    public V get(NFA nfa) {
+        String key = structuralKey(nfa);
+        CompletableFuture<V> future;
+        boolean owner = false;
+        synchronized (this) {
+            Entry<V> entry = entries.get(key);
+            if (entry != null) {
+                hits++;
+                return entry.value;
+            }
+            misses++;
+            future = loading.get(key);
+            if (future == null) {
+                future = new CompletableFuture<>();
+                loading.put(key, future);
+                owner = true;
+            }
+        }
+        if (!owner) {
+            try {
+                return future.join();
+            } catch (CompletionException e) {
+                // Rethrow the owner's failure as is, so every caller sees
+                // the same exception.
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw e;
+            }
+        }
+
+        // Compile outside the lock so other keys are not held up.
+        try {
+            V value = compiler.apply(nfa);
+            long valueWeight = weigher.applyAsLong(value);
+            synchronized (this) {
+                loading.remove(key);
+                entries.put(key, new Entry<>(value, valueWeight));
+                weight += valueWeight;
+                evict();
+            }
+            future.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            synchronized (this) {
+                loading.remove(key);
+            }
+            future.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Drops every entry. Statistics are kept.
+     */
+    public synchronized void invalidateAll() {
+        entries.clear();
+        weight = 0;
+    }
+
+    /**
+     * @return the number of cached entries
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the total weight of the cached entries
+     */
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    /**
+     * @return the number of lookups answered from the cache
+     */
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    /**
+     * @return the number of lookups that had to compile or wait for a
+     *         compilation in progress
+     */
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    /**
+     * @return the number of entries removed to respect the bounds
+     */
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "entries=" + entries.size() + " weight=" + weight + " hits=" + hits + " misses=" + misses
+                + " evictions=" + evictions;
+    }
+
+    /**
+     * Removes least recently used entries until both bounds hold.
+     */
+    private void evict() {
+        Iterator<Entry<V>> it = entries.values().iterator();
+        while ((entries.size() > maxEntries || weight > maxWeight) && it.hasNext()) {
+            weight -= it.next().weight;
+            it.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Computes a canonical SHA-256 hash of the structure of an NFA: its
+     * states, alphabet, start state, final states and transitions. Sets
+     * are hashed in sorted order, so the insertion order used to build the
+     * automaton does not matter.
+     *
+     * @param nfa - the automaton
+     * @return the hash as a hex string
+     */
+    public static String structuralKey(NFA nfa) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        List<NFAState> sorted = new ArrayList<>(nfa.getStates());
+        Collections.sort(sorted, (a, b) -> a.getName().compareTo(b.getName()));
+        try (DataOutputStream out = new DataOutputStream(
+                new DigestOutputStream(OutputStream.nullOutputStream(), digest))) {
+            out.writeInt(sorted.size());
+            for (NFAState state : sorted) {
+                out.writeUTF(state.getName());
+            }
+            Set<Character> alphabet = new TreeSet<>(nfa.getSigma());
+            out.writeInt(alphabet.size());
+            for (char symbol : alphabet) {
+                out.writeChar(symbol);
+            }
+            out.writeBoolean(nfa.getStartState() != null);
+            if (nfa.getStartState() != null) {
+                out.writeUTF(nfa.getStartState().getName());
+            }
+            writeNames(out, nfa.getFinalStates());
+            for (NFAState state : sorted) {
+                Set<Character> labels = new TreeSet<>(state.getTransitionList().keySet());
+                out.writeInt(labels.size());
+                for (char symbol : labels) {
+                    out.writeChar(symbol);
+                    writeNames(out, state.getToStates(symbol));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        StringBuilder builder = new StringBuilder();
+        for (byte b : digest.digest()) {
+            builder.append(String.format("%02x", b));
+        }
+        return builder.toString();
+    }
+
+    private static void writeNames(DataOutputStream out, Set<NFAState> states) throws IOException {
+        Set<String> names = new TreeSet<>();
+        for (NFAState state : states) {
+            names.add(state.getName());
+        }
+        out.writeInt(names.size());
+        for (String name : names) {
+            out.writeUTF(name);
+        }
+    }
+}
@@ -0,0 +1,501 @@
+package fa.nfa;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An epsilon-free, integer-indexed form of an NFA whose tables live
+ * outside the Java heap, either in a direct buffer or in a read-only
+ * memory-mapped file that several JVMs can share.
+ *
+ * States are numbered in the order the NFA lists them. Every row of the
+ * transition table already contains the ε-closure of its targets, and
+ * by default states from which no final state is reachable are left out
+ * entirely, so an empty active set means the input is rejected. Stepping
+ * on the character 'e' follows epsilon transitions, exactly as
+ * {@link NFA#accepts(String)} does. Automata compiled with dead states
+ * kept have exactly the active sets of the NFA and can also answer
+ * {@link #maxCopies(String)}.
+ *
+ * The buffer is a sequence of little-endian ints:
+ * magic, version, state count, symbol count, start set size, target
+ * count, options, the sorted symbols, the start set, one flag word per
+ * state, state count * symbol count + 1 row offsets, and the targets.
+ */
+public class CompiledNFA {
+
+    private static final int MAGIC = 0x4E464143; // "NFAC"
+    private static final int VERSION = 2;
+    private static final int HEADER_INTS = 7;
+
+    private static final int OPTION_KEEP_DEAD = 1;
+
+    private static final int FLAG_FINAL = 1;
+    private static final int FLAG_ACCEPT_ALL = 2;
+
+    private final ByteBuffer buffer;
+    private final IntBuffer table;
+    private final int stateCount;
+    private final int symbolCount;
+    private final int startCount;
+    private final int targetCount;
+    private final int options;
+    private final int startBase;
+    private final int flagBase;
+    private final int offsetBase;
+    private final int targetBase;
+
+    // Symbol lookup is kept on the heap; it is tiny and on the hot path.
+    private final char[] symbols;
+    private final int[] asciiIndex;
+
+    private final ThreadLocal<Scratch> scratch;
+
+    /**
+     * Per-thread working memory for simulations, sized to the state count
+     * once instead of on every call.
+     */
+    private static class Scratch {
+        int[] current;
+        int[] next;
+        int[] stamp;
+        int generation;
+
+        Scratch(int stateCount) {
+            current = new int[stateCount];
+            next = new int[stateCount];
+            stamp = new int[stateCount];
+        }
+
+        int nextGeneration() {
+            if (++generation == 0) {
+                Arrays.fill(stamp, 0);
+                generation = 1;
+            }
+            return generation;
+        }
+    }
+
+    private CompiledNFA(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+        table = this.buffer.asIntBuffer();
+        if (table.limit() < HEADER_INTS || table.get(0) != MAGIC) {
+            throw new IOException("not a compiled NFA");
+        }
+        int version = table.get(1);
+        if (version != VERSION) {
+            throw new IOException("unsupported compiled NFA version " + version);
+        }
+        stateCount = table.get(2);
+        symbolCount = table.get(3);
+        startCount = table.get(4);
+        targetCount = table.get(5);
+        options = table.get(6);
+        startBase = HEADER_INTS + symbolCount;
+        flagBase = startBase + startCount;
+        offsetBase = flagBase + stateCount;
+        targetBase = offsetBase + stateCount * symbolCount + 1;
+        if (table.limit() < targetBase + targetCount) {
+            throw new IOException("truncated compiled NFA");
+        }
+
+        symbols = new char[symbolCount];
+        asciiIndex = new int[128];
+        Arrays.fill(asciiIndex, -1);
+        for (int a = 0; a < symbolCount; a++) {
+            symbols[a] = (char) table.get(HEADER_INTS + a);
+            if (symbols[a] < 128) {
+                asciiIndex[symbols[a]] = a;
+            }
+        }
+        scratch = ThreadLocal.withInitial(() -> new Scratch(stateCount));
+    }
+
+    /**
+     * Compiles an NFA into a direct buffer, leaving out dead states
+     *
+     * @param nfa - the automaton, which must have a start state
+     * @return the compiled automaton
+     */
+    public static CompiledNFA compile(NFA nfa) {
+        return compile(nfa, false);
+    }
+
+    /**
+     * Compiles an NFA into a direct buffer
+     *
+     * @param nfa            - the automaton, which must have a start state
+     * @param keepDeadStates - keep states that can no longer accept, which
+     *                       {@link #maxCopies(String)} needs, at the cost
+     *                       of larger active sets
+     * @return the compiled automaton
+     */
+    public static CompiledNFA compile(NFA nfa, boolean keepDeadStates) {
+        List<NFAState> order = new ArrayList<>(nfa.getStates());
+        Map<NFAState, Integer> index = new HashMap<>();
+        for (NFAState state : order) {
+            index.put(state, index.size());
+        }
+
+        char[] sorted = new char[nfa.getSigma().size()];
+        int symbolCount = 0;
+        for (char symbol : nfa.getSigma()) {
+            sorted[symbolCount++] = symbol;
+        }
+        Arrays.sort(sorted);
+
+        // Closures are shared by every row that reaches the same target.
+        Map<NFAState, int[]> closures = new HashMap<>();
+        int stateCount = order.size();
+        if ((long) stateCount * symbolCount >= Integer.MAX_VALUE) {
+            throw new IllegalStateException("automaton too large for a single buffer: " + stateCount + " states");
+        }
+        int[] offsets = new int[stateCount * symbolCount + 1];
+        IntList targets = new IntList();
+        int[] stamp = new int[stateCount];
+        int generation = 0;
+        for (int q = 0; q < stateCount; q++) {
+            for (int a = 0; a < symbolCount; a++) {
+                offsets[q * symbolCount + a] = targets.size;
+                generation++;
+                for (NFAState target : order.get(q).getToStates(sorted[a])) {
+                    for (int t : closure(nfa, target, index, closures, keepDeadStates)) {
+                        if (stamp[t] != generation) {
+                            stamp[t] = generation;
+                            targets.add(t);
+                        }
+                    }
+                }
+                Arrays.sort(targets.data, offsets[q * symbolCount + a], targets.size);
+            }
+        }
+        offsets[stateCount * symbolCount] = targets.size;
+        int[] start = closure(nfa, nfa.getStartState(), index, closures, keepDeadStates);
+
+        long ints = (long) HEADER_INTS + symbolCount + start.length + stateCount + offsets.length
+                + targets.size;
+        if (ints * Integer.BYTES > Integer.MAX_VALUE) {
+            throw new IllegalStateException("automaton too large for a single buffer: " + ints + " ints");
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect((int) (ints * Integer.BYTES)).order(ByteOrder.LITTLE_ENDIAN);
+        IntBuffer out = buffer.asIntBuffer();
+        out.put(MAGIC).put(VERSION).put(stateCount).put(symbolCount).put(start.length).put(targets.size)
+                .put(keepDeadStates ? OPTION_KEEP_DEAD : 0);
+        for (int a = 0; a < symbolCount; a++) {
+            out.put(sorted[a]);
+        }
+        out.put(start);
+        for (NFAState state : order) {
+            int flags = 0;
+            if (nfa.getFinalStates().contains(state)) {
+                flags |= FLAG_FINAL;
+            }
+            if (nfa.alwaysAccepts(state)) {
+                flags |= FLAG_ACCEPT_ALL;
+            }
+            out.put(flags);
+        }
+        out.put(offsets);
+        out.put(targets.data, 0, targets.size);
+
+        try {
+            return new CompiledNFA(buffer);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Maps a file written by {@link #write(Path)} read-only. The pages are
+     * shared with every other process mapping the same file.
+     *
+     * @param file - the compiled automaton file
+     * @return the compiled automaton backed by the mapping
+     * @throws IOException if the file cannot be read or is not a compiled NFA
+     */
+    public static CompiledNFA map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new CompiledNFA(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Writes the tables to a file that {@link #map(Path)} can load
+     *
+     * @param file - the destination, replaced if it exists
+     * @throws IOException if the file cannot be written
+     */
+    public void write(Path file) throws IOException {
+        ByteBuffer bytes = buffer.duplicate();
+        bytes.clear();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        }
+    }
+
+    /**
+     * @return the number of state rows, including the empty rows of states
+     *         that can no longer accept
+     */
+    public int getStateCount() {
+        return stateCount;
+    }
+
+    /**
+     * @return the alphabet in sorted order, including 'e' if the NFA's
+     *         alphabet holds it
+     */
+    public char[] getSymbols() {
+        return symbols.clone();
+    }
+
+    /**
+     * @return the size of the off-heap tables in bytes
+     */
+    public long getSizeInBytes() {
+        return buffer.capacity();
+    }
+
+    /**
+     * @return the number of (state, symbol, target) entries after ε-closure
+     */
+    public int getTransitionCount() {
+        return targetCount;
+    }
+
+    /**
+     * Returns the ε-closure of the start state, without states that can no
+     * longer accept unless the automaton keeps its dead states
+     *
+     * @return sorted state numbers
+     */
+    public int[] start() {
+        int[] result = new int[startCount];
+        for (int i = 0; i < startCount; i++) {
+            result[i] = table.get(startBase + i);
+        }
+        return result;
+    }
+
+    /**
+     * Moves every active state on one input symbol
+     *
+     * @param active - state numbers of the active set
+     * @param c      - the input symbol
+     * @return the active set after the symbol, possibly empty
+     */
+    public int[] next(int[] active, char c) {
+        Scratch work = scratch.get();
+        int count = step(work, active, active.length, c, work.next);
+        int[] result = Arrays.copyOf(work.next, count);
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Determines if an active set contains a final state
+     *
+     * @param active - state numbers of the active set
+     * @return true if the input read so far is accepted
+     */
+    public boolean isAccepting(int[] active) {
+        return anyFlag(active, active.length, FLAG_FINAL);
+    }
+
+    /**
+     * Determines if an active set accepts every continuation over the
+     * alphabet, see {@link NFA#isAcceptAll(Set)}
+     *
+     * @param active - state numbers of the active set
+     * @return true if every continuation over the alphabet is accepted
+     */
+    public boolean isAcceptAll(int[] active) {
+        return anyFlag(active, active.length, FLAG_ACCEPT_ALL);
+    }
+
+    /**
+     * Simulates the compiled automaton on input s. Gives the same answer as
+     * {@link NFA#accepts(String)} on the NFA it was compiled from.
+     *
+     * @param s - the input string
+     * @return true if s in the language of the FA and false otherwise
+     */
+    public boolean accepts(String s) {
+        if ("e".equals(s)) {
+            s = "";
+        }
+        Scratch work = scratch.get();
+        int[] current = work.current;
+        int[] next = work.next;
+        int count = startCount;
+        for (int i = 0; i < startCount; i++) {
+            current[i] = table.get(startBase + i);
+        }
+
+        int blockedUntil = -1;
+        for (int i = 0; i < s.length(); i++) {
+            // Only live states are stored, so an empty set is a dead one.
+            if (count == 0) {
+                return false;
+            }
+            if (i > blockedUntil && anyFlag(current, count, FLAG_ACCEPT_ALL)) {
+                blockedUntil = indexOfForeignSymbol(s, i);
+                if (blockedUntil < 0) {
+                    return true;
+                }
+            }
+            count = step(work, current, count, s.charAt(i), next);
+            int[] swap = current;
+            current = next;
+            next = swap;
+        }
+        return anyFlag(current, count, FLAG_FINAL);
+    }
+
+    /**
+     * @return true if the automaton was compiled with its dead states
+     */
+    public boolean keepsDeadStates() {
+        return (options & OPTION_KEEP_DEAD) != 0;
+    }
+
+    /**
+     * Determines the maximum number of simultaneously active states while
+     * reading s. Gives the same answer as {@link NFA#maxCopies(String)} on
+     * the NFA it was compiled from, including reading "e" as one epsilon
+     * move.
+     *
+     * @param s - the input string
+     * @return the maximum number of NFA copies
+     * @throws IllegalStateException if dead states were left out
+     */
+    public int maxCopies(String s) {
+        if (!keepsDeadStates()) {
+            throw new IllegalStateException("maxCopies needs an automaton compiled with its dead states");
+        }
+        Scratch work = scratch.get();
+        int[] current = work.current;
+        int[] next = work.next;
+        int count = startCount;
+        for (int i = 0; i < startCount; i++) {
+            current[i] = table.get(startBase + i);
+        }
+        int max = count;
+        for (int i = 0; i < s.length(); i++) {
+            int size = step(work, current, count, s.charAt(i), next);
+            // As in NFA.maxCopies, the run stops once no copy survives.
+            if (size == 0) {
+                break;
+            }
+            int[] swap = current;
+            current = next;
+            next = swap;
+            count = size;
+            max = Math.max(max, count);
+        }
+        return max;
+    }
+
+    /**
+     * Returns the table index of a symbol, or -1 if it is not in the
+     * alphabet
+     */
+    int symbolIndex(char c) {
+        if (c < 128) {
+            return asciiIndex[c];
+        }
+        int a = Arrays.binarySearch(symbols, c);
+        return a < 0 ? -1 : a;
+    }
+
+    private int step(Scratch work, int[] current, int count, char c, int[] next) {
+        int a = symbolIndex(c);
+        if (a < 0) {
+            return 0;
+        }
+        int generation = work.nextGeneration();
+        int[] stamp = work.stamp;
+        int size = 0;
+        for (int i = 0; i < count; i++) {
+            int row = offsetBase + current[i] * symbolCount + a;
+            int end = targetBase + table.get(row + 1);
+            for (int j = targetBase + table.get(row); j < end; j++) {
+                int t = table.get(j);
+                if (stamp[t] != generation) {
+                    stamp[t] = generation;
+                    next[size++] = t;
+                }
+            }
+        }
+        return size;
+    }
+
+    private boolean anyFlag(int[] active, int count, int flag) {
+        for (int i = 0; i < count; i++) {
+            if ((table.get(flagBase + active[i]) & flag) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int indexOfForeignSymbol(String s, int from) {
+        for (int i = from; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == 'e' || symbolIndex(c) < 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the ε-closure of state as sorted numbers, only its live part
+     * unless dead states are kept.
+     */
+    private static int[] closure(NFA nfa, NFAState state, Map<NFAState, Integer> index,
+            Map<NFAState, int[]> closures, boolean keepDeadStates) {
+        int[] result = closures.get(state);
+        if (result == null) {
+            IntList live = new IntList();
+            for (NFAState member : nfa.eClosure(state)) {
+                if (keepDeadStates || nfa.canStillAccept(member)) {
+                    live.add(index.get(member));
+                }
+            }
+            result = Arrays.copyOf(live.data, live.size);
+            Arrays.sort(result);
+            closures.put(state, result);
+        }
+        return result;
+    }
+
+    /**
+     * Growable array of primitive ints.
+     */
+    private static class IntList {
+        int[] data = new int[16];
+        int size;
+
+        void add(int value) {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, size * 2);
+            }
+            data[size++] = value;
+        }
+    }
+}
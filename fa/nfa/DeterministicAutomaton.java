@@ -0,0 +1,223 @@
+package fa.nfa;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * The result of determinizing an NFA: a partial DFA over the compiled
+ * alphabet. State 0 is the start state and a missing transition (-1)
+ * means the input is rejected. The alphabet keeps the epsilon label 'e',
+ * whose column takes the epsilon moves an 'e' in the input takes in
+ * {@link NFA#accepts(String)}, so accepts agrees with the NFA on every
+ * input. Because every accepted string has exactly one run, counting
+ * runs counts strings, which is what the counting and sampling methods
+ * rely on; they skip the 'e' column, since 'e' is not a symbol of the
+ * language.
+ */
+public class DeterministicAutomaton {
+
+    // Layers with at least this many states are computed in parallel.
+    private static final int PARALLEL_THRESHOLD = 2048;
+
+    private final char[] symbols;
+    private final int[] delta;
+    private final boolean[] accepting;
+    // Column of the epsilon label, or -1 if the alphabet lacks it.
+    private final int epsilon;
+
+    /**
+     * @param symbols   - the sorted input symbols, possibly including 'e'
+     * @param delta     - row-major table, entry [q * symbols + a] is the
+     *                  target of state q on symbol a or -1
+     * @param accepting - the accepting flag of every state
+     */
+    DeterministicAutomaton(char[] symbols, int[] delta, boolean[] accepting) {
+        this.symbols = symbols;
+        this.delta = delta;
+        this.accepting = accepting;
+        int column = Arrays.binarySearch(symbols, 'e');
+        epsilon = column < 0 ? -1 : column;
+    }
+
+    /**
+     * @return the number of states, at least 1
+     */
+    public int getStateCount() {
+        return accepting.length;
+    }
+
+    /**
+     * @return the sorted input symbols, including 'e' if the NFA's
+     *         alphabet holds it
+     */
+    public char[] getSymbols() {
+        return symbols.clone();
+    }
+
+    /**
+     * @param state - a state number
+     * @param c     - an input symbol
+     * @return the target state, or -1 if there is none
+     */
+    public int next(int state, char c) {
+        int a = Arrays.binarySearch(symbols, c);
+        return a < 0 ? -1 : delta[state * symbols.length + a];
+    }
+
+    /**
+     * @param state - a state number
+     * @return true if the state is accepting
+     */
+    public boolean isAccepting(int state) {
+        return accepting[state];
+    }
+
+    /**
+     * Runs the DFA on s
+     *
+     * @param s - the input string; "e" is the empty string as in NFA.accepts
+     * @return true if s is accepted
+     */
+    public boolean accepts(String s) {
+        if ("e".equals(s)) {
+            s = "";
+        }
+        int state = 0;
+        for (int i = 0; i < s.length() && state >= 0; i++) {
+            state = next(state, s.charAt(i));
+        }
+        return state >= 0 && accepting[state];
+    }
+
+    /**
+     * Counts the accepted strings of length n
+     *
+     * @param n - the length, at least 0
+     * @return the exact count
+     */
+    public BigInteger countAccepted(int n) {
+        BigInteger[] layer = firstLayer();
+        for (int k = 1; k <= n; k++) {
+            layer = nextLayer(layer);
+        }
+        return layer[0];
+    }
+
+    /**
+     * Counts the accepted strings of length n modulo p, which avoids
+     * big-number arithmetic for very large n
+     *
+     * @param n - the length, at least 0
+     * @param p - the modulus, at least 1 and below 2^62
+     * @return the count modulo p
+     */
+    public long countAcceptedMod(int n, long p) {
+        int states = getStateCount();
+        long[] layer = new long[states];
+        for (int q = 0; q < states; q++) {
+            layer[q] = accepting[q] ? 1 % p : 0;
+        }
+        for (int k = 1; k <= n; k++) {
+            long[] previous = layer;
+            long[] next = new long[states];
+            range(states).forEach(q -> {
+                long sum = 0;
+                for (int a = 0; a < symbols.length; a++) {
+                    int target = delta[q * symbols.length + a];
+                    if (target >= 0 && a != epsilon) {
+                        sum = (sum + previous[target]) % p;
+                    }
+                }
+                next[q] = sum;
+            });
+            layer = next;
+        }
+        return layer[0];
+    }
+
+    /**
+     * Draws an accepted string of length n uniformly at random. Each symbol
+     * is chosen with probability proportional to the number of accepted
+     * completions it leaves.
+     *
+     * @param n      - the length, at least 0
+     * @param random - the source of randomness
+     * @return the sampled string, or null if no string of length n is
+     *         accepted
+     */
+    public String sampleAccepted(int n, Random random) {
+        // layers[k][q] counts the accepted strings of length k from q.
+        BigInteger[][] layers = new BigInteger[n + 1][];
+        layers[0] = firstLayer();
+        for (int k = 1; k <= n; k++) {
+            layers[k] = nextLayer(layers[k - 1]);
+        }
+        if (layers[n][0].signum() == 0) {
+            return null;
+        }
+
+        StringBuilder builder = new StringBuilder(n);
+        int state = 0;
+        for (int remaining = n; remaining > 0; remaining--) {
+            BigInteger pick = uniform(layers[remaining][state], random);
+            for (int a = 0; a < symbols.length; a++) {
+                int target = delta[state * symbols.length + a];
+                if (target < 0 || a == epsilon) {
+                    continue;
+                }
+                pick = pick.subtract(layers[remaining - 1][target]);
+                if (pick.signum() < 0) {
+                    builder.append(symbols[a]);
+                    state = target;
+                    break;
+                }
+            }
+        }
+        return builder.toString();
+    }
+
+    private BigInteger[] firstLayer() {
+        BigInteger[] layer = new BigInteger[getStateCount()];
+        for (int q = 0; q < layer.length; q++) {
+            layer[q] = accepting[q] ? BigInteger.ONE : BigInteger.ZERO;
+        }
+        return layer;
+    }
+
+    private BigInteger[] nextLayer(BigInteger[] previous) {
+        BigInteger[] next = new BigInteger[previous.length];
+        range(previous.length).forEach(q -> {
+            BigInteger sum = BigInteger.ZERO;
+            for (int a = 0; a < symbols.length; a++) {
+                int target = delta[q * symbols.length + a];
+                if (target >= 0 && a != epsilon) {
+                    sum = sum.add(previous[target]);
+                }
+            }
+            next[q] = sum;
+        });
+        return next;
+    }
+
+    /**
+     * Each state of a layer only reads the previous layer, so large
+     * layers are split across the common fork-join pool.
+     */
+    private static IntStream range(int states) {
+        IntStream range = IntStream.range(0, states);
+        return states >= PARALLEL_THRESHOLD ? range.parallel() : range;
+    }
+
+    /**
+     * Returns a uniform number in [0, bound) by rejection sampling.
+     */
+    private static BigInteger uniform(BigInteger bound, Random random) {
+        BigInteger pick;
+        do {
+            pick = new BigInteger(bound.bitLength(), random);
+        } while (pick.compareTo(bound) >= 0);
+        return pick;
+    }
+}
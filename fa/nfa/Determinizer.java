@@ -0,0 +1,233 @@
+package fa.nfa;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Subset construction over the epsilon-free compiled form of an NFA.
+ * Macro-states are numbered in breadth-first order from the start set,
+ * and empty macro-states are left out, so the result is a partial DFA.
+ *
+ * The parallel variant expands one breadth-first level at a time across
+ * a fork-join pool, deduplicating macro-states in a concurrent hash map.
+ * New macro-states are then numbered by where they first occur in the
+ * level, which is the order the sequential construction would have used,
+ * so both variants produce identical automata on every run.
+ */
+public class Determinizer {
+
+    /**
+     * The default limit on the number of DFA states, beyond which the
+     * construction gives up instead of exhausting memory.
+     */
+    public static final int DEFAULT_MAX_STATES = 1 << 20;
+
+    /**
+     * Determinizes an NFA with the default state limit
+     *
+     * @param nfa - the automaton
+     * @return the equivalent partial DFA
+     * @throws IllegalStateException if the DFA exceeds the default limit
+     */
+    public static DeterministicAutomaton determinize(NFA nfa) {
+        return determinize(CompiledNFA.compile(nfa), DEFAULT_MAX_STATES);
+    }
+
+    /**
+     * Determinizes a compiled NFA
+     *
+     * @param compiled  - the automaton
+     * @param maxStates - the most DFA states to build
+     * @return the equivalent partial DFA
+     * @throws IllegalStateException if the DFA exceeds maxStates
+     */
+    public static DeterministicAutomaton determinize(CompiledNFA compiled, int maxStates) {
+        char[] symbols = compiled.getSymbols();
+        Map<StateSet, Integer> ids = new HashMap<>();
+        List<int[]> sets = new ArrayList<>();
+        IntArray delta = new IntArray();
+
+        int[] start = compiled.start();
+        ids.put(new StateSet(start), 0);
+        sets.add(start);
+        for (int id = 0; id < sets.size(); id++) {
+            int[] set = sets.get(id);
+            for (char symbol : symbols) {
+                int[] next = compiled.next(set, symbol);
+                if (next.length == 0) {
+                    delta.add(-1);
+                    continue;
+                }
+                StateSet key = new StateSet(next);
+                Integer target = ids.get(key);
+                if (target == null) {
+                    if (sets.size() >= maxStates) {
+                        throw new IllegalStateException("determinization exceeds " + maxStates + " states");
+                    }
+                    target = sets.size();
+                    ids.put(key, target);
+                    sets.add(next);
+                }
+                delta.add(target);
+            }
+        }
+
+        boolean[] accepting = new boolean[sets.size()];
+        for (int id = 0; id < sets.size(); id++) {
+            accepting[id] = compiled.isAccepting(sets.get(id));
+        }
+        return new DeterministicAutomaton(symbols, delta.toArray(), accepting);
+    }
+
+    /**
+     * Determinizes an NFA on several threads with the default state limit
+     *
+     * @param nfa     - the automaton
+     * @param threads - the parallelism, at least 1
+     * @return the same partial DFA that {@link #determinize(NFA)} returns
+     * @throws IllegalStateException if the DFA exceeds the default limit
+     */
+    public static DeterministicAutomaton determinizeParallel(NFA nfa, int threads) {
+        return determinizeParallel(CompiledNFA.compile(nfa), DEFAULT_MAX_STATES, threads);
+    }
+
+    /**
+     * Determinizes a compiled NFA on several threads
+     *
+     * @param compiled  - the automaton
+     * @param maxStates - the most DFA states to build
+     * @param threads   - the parallelism, at least 1
+     * @return the same partial DFA that the sequential construction returns
+     * @throws IllegalStateException if the DFA exceeds maxStates
+     */
+    public static DeterministicAutomaton determinizeParallel(CompiledNFA compiled, int maxStates, int threads) {
+        char[] symbols = compiled.getSymbols();
+        int width = symbols.length;
+        Map<StateSet, Integer> ids = new ConcurrentHashMap<>();
+        List<int[]> sets = new ArrayList<>();
+        List<int[]> rows = new ArrayList<>();
+
+        int[] start = compiled.start();
+        ids.put(new StateSet(start), 0);
+        sets.add(start);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            int levelStart = 0;
+            while (levelStart < sets.size()) {
+                int base = levelStart;
+                int count = sets.size() - base;
+                StateSet[][] successors = new StateSet[count][width];
+                // Earliest (state, symbol) position of every unseen macro-state.
+                Map<StateSet, Long> firstSeen = new ConcurrentHashMap<>();
+                run(pool, () -> IntStream.range(0, count).parallel().forEach(i -> {
+                    for (int a = 0; a < width; a++) {
+                        int[] next = compiled.next(sets.get(base + i), symbols[a]);
+                        if (next.length == 0) {
+                            continue;
+                        }
+                        StateSet key = new StateSet(next);
+                        successors[i][a] = key;
+                        if (!ids.containsKey(key)) {
+                            firstSeen.merge(key, (long) i * width + a, Math::min);
+                        }
+                    }
+                }));
+
+                List<Map.Entry<StateSet, Long>> fresh = new ArrayList<>(firstSeen.entrySet());
+                fresh.sort(Map.Entry.comparingByValue());
+                for (Map.Entry<StateSet, Long> entry : fresh) {
+                    if (sets.size() >= maxStates) {
+                        throw new IllegalStateException("determinization exceeds " + maxStates + " states");
+                    }
+                    ids.put(entry.getKey(), sets.size());
+                    sets.add(entry.getKey().states);
+                }
+
+                int[][] level = new int[count][width];
+                run(pool, () -> IntStream.range(0, count).parallel().forEach(i -> {
+                    for (int a = 0; a < width; a++) {
+                        level[i][a] = successors[i][a] == null ? -1 : ids.get(successors[i][a]);
+                    }
+                }));
+                rows.addAll(Arrays.asList(level));
+                levelStart = base + count;
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        int[] delta = new int[rows.size() * width];
+        boolean[] accepting = new boolean[sets.size()];
+        for (int id = 0; id < sets.size(); id++) {
+            System.arraycopy(rows.get(id), 0, delta, id * width, width);
+            accepting[id] = compiled.isAccepting(sets.get(id));
+        }
+        return new DeterministicAutomaton(symbols, delta, accepting);
+    }
+
+    /**
+     * Runs a task inside the pool so parallel streams use its threads.
+     */
+    private static void run(ForkJoinPool pool, Runnable task) {
+        try {
+            pool.submit(task).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("determinization interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * A sorted set of NFA state numbers usable as a hash key.
+     */
+    static final class StateSet {
+        final int[] states;
+        private final int hash;
+
+        StateSet(int[] states) {
+            this.states = states;
+            this.hash = Arrays.hashCode(states);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof StateSet && Arrays.equals(states, ((StateSet) o).states);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Growable array of primitive ints.
+     */
+    static final class IntArray {
+        private int[] data = new int[64];
+        private int size;
+
+        void add(int value) {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, size * 2);
+            }
+            data[size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(data, size);
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package fa.nfa;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import fa.FAInterface;
+
+/**
+ * Remembers the answers of {@link FAInterface#accepts(String)} for
+ * repeated inputs. The cache is bounded by an estimate of the bytes it
+ * holds, split into independently locked segments so concurrent callers
+ * rarely contend, and evicts least recently used inputs first. Inputs
+ * longer than a set limit are never cached.
+ *
+ * In shared-prefix mode the active-state set reached after every
+ * stride-th prefix is cached as well. An input missing from the result
+ * cache resumes simulation from the longest cached prefix instead of
+ * starting over, so inputs that share a long common prefix only pay for
+ * their differing suffix. Cached prefixes form a trie: each checkpoint
+ * is keyed by its parent checkpoint and the stride characters that lead
+ * to it, so neither lookups nor entries copy the whole prefix.
+ */
+public class MemoizingAcceptor {
+
+    private static final int SEGMENTS = 16;
+
+    // Rough per-entry overhead of the map entry, key object and value.
+    private static final int ENTRY_OVERHEAD = 64;
+
+    private final FAInterface fa;
+    private final int maxInputLength;
+    private final SegmentedCache<String, Boolean> results;
+
+    // Only set in shared-prefix mode.
+    private final CompiledNFA compiled;
+    private final int stride;
+    private final SegmentedCache<PrefixKey, Checkpoint> prefixes;
+    // Ids of prefix checkpoints; 0 is the empty prefix.
+    private final AtomicLong checkpointIds = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder prefixHits = new LongAdder();
+
+    /**
+     * Wraps any automaton with a result cache
+     *
+     * @param fa             - the automaton
+     * @param maxBytes       - the approximate memory the cache may use
+     * @param maxInputLength - longer inputs are passed through uncached
+     */
+    public MemoizingAcceptor(FAInterface fa, long maxBytes, int maxInputLength) {
+        this(fa, maxBytes, maxInputLength, null, 0);
+    }
+
+    private MemoizingAcceptor(FAInterface fa, long maxBytes, int maxInputLength, CompiledNFA compiled, int stride) {
+        this.fa = fa;
+        this.maxInputLength = maxInputLength;
+        this.compiled = compiled;
+        this.stride = stride;
+        if (compiled == null) {
+            results = new SegmentedCache<>(maxBytes);
+            prefixes = null;
+        } else {
+            results = new SegmentedCache<>(maxBytes / 2);
+            prefixes = new SegmentedCache<>(maxBytes / 2);
+        }
+    }
+
+    /**
+     * Wraps an NFA with a result cache and a shared-prefix cache
+     *
+     * @param nfa            - the automaton
+     * @param maxBytes       - the approximate memory both caches may use
+     * @param maxInputLength - longer inputs are passed through uncached
+     * @param stride         - active sets are cached after every prefix
+     *                       whose length is a multiple of stride
+     * @return the memoizing wrapper
+     */
+    public static MemoizingAcceptor withPrefixCache(NFA nfa, long maxBytes, int maxInputLength, int stride) {
+        if (stride < 1) {
+            throw new IllegalArgumentException("stride must be positive");
+        }
+        return new MemoizingAcceptor(nfa, maxBytes, maxInputLength, CompiledNFA.compile(nfa), stride);
+    }
+
+    /**
+     * Answers like the wrapped automaton's accepts, from the cache when
+     * possible
+     *
+     * @param s - the input string
+     * @return true if s in the language of the FA and false otherwise
+     */
+    public boolean accepts(String s) {
+        if (s.length() > maxInputLength) {
+            return fa.accepts(s);
+        }
+        Boolean cached = results.get(s);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+        misses.increment();
+        boolean result = compiled == null ? fa.accepts(s) : acceptsFromPrefix(s);
+        results.put(s, result, ENTRY_OVERHEAD + 2L * s.length());
+        return result;
+    }
+
+    /**
+     * @return the number of answers served from the result cache
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of cacheable inputs that had to be simulated
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the number of misses that resumed from a cached prefix
+     */
+    public long getPrefixHitCount() {
+        return prefixHits.sum();
+    }
+
+    /**
+     * Simulates s on the compiled automaton, starting from the longest
+     * cached prefix and caching the prefixes it passes on the way.
+     */
+    private boolean acceptsFromPrefix(String s) {
+        if ("e".equals(s)) {
+            s = "";
+        }
+        // Walk down the trie of cached prefixes one chunk at a time.
+        long parent = 0;
+        int position = 0;
+        int[] active = compiled.start();
+        while (position + stride <= s.length()) {
+            Checkpoint checkpoint = prefixes.get(new PrefixKey(parent, s, position, stride));
+            if (checkpoint == null) {
+                break;
+            }
+            parent = checkpoint.id;
+            active = checkpoint.active;
+            position += stride;
+        }
+        if (position > 0) {
+            prefixHits.increment();
+        }
+
+        for (int i = position; i < s.length(); i++) {
+            if (active.length == 0) {
+                return false;
+            }
+            active = compiled.next(active, s.charAt(i));
+            if ((i + 1) % stride == 0) {
+                Checkpoint checkpoint = new Checkpoint(checkpointIds.incrementAndGet(), active);
+                prefixes.put(new PrefixKey(parent, s, i + 1 - stride, stride), checkpoint,
+                        ENTRY_OVERHEAD + 2L * stride + 4L * active.length);
+                parent = checkpoint.id;
+            }
+        }
+        return compiled.isAccepting(active);
+    }
+
+    /**
+     * A cached prefix: its id and the active set after reading it.
+     */
+    private static class Checkpoint {
+        final long id;
+        final int[] active;
+
+        Checkpoint(long id, int[] active) {
+            this.id = id;
+            this.active = active;
+        }
+    }
+
+    /**
+     * Identifies a prefix by the checkpoint of its first length - stride
+     * characters and its last stride characters. Ids are never reused, so
+     * a key whose parent was evicted can no longer be reached.
+     */
+    private static final class PrefixKey {
+        final long parent;
+        final String chunk;
+        final int hash;
+
+        PrefixKey(long parent, String s, int from, int length) {
+            this.parent = parent;
+            this.chunk = s.substring(from, from + length);
+            this.hash = 31 * Long.hashCode(parent) + chunk.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof PrefixKey)) {
+                return false;
+            }
+            PrefixKey other = (PrefixKey) o;
+            return parent == other.parent && chunk.equals(other.chunk);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * A byte-bounded LRU map split into segments by key hash.
+     */
+    private static class SegmentedCache<K, V> {
+        private final Segment<K, V>[] segments;
+
+        @SuppressWarnings("unchecked")
+        SegmentedCache(long maxBytes) {
+            segments = (Segment<K, V>[]) new Segment<?, ?>[SEGMENTS];
+            for (int i = 0; i < SEGMENTS; i++) {
+                segments[i] = new Segment<>(Math.max(1, maxBytes / SEGMENTS));
+            }
+        }
+
+        V get(K key) {
+            return segment(key).get(key);
+        }
+
+        void put(K key, V value, long bytes) {
+            segment(key).put(key, value, bytes);
+        }
+
+        private Segment<K, V> segment(K key) {
+            int h = key.hashCode();
+            return segments[(h ^ (h >>> 16)) & (SEGMENTS - 1)];
+        }
+    }
+
+    /**
+     * One lock-protected LRU segment.
+     */
+    private static class Segment<K, V> {
+        private final long maxBytes;
+        private final LinkedHashMap<K, Map.Entry<V, Long>> map = new LinkedHashMap<>(16, 0.75f, true);
+        private long bytes;
+
+        Segment(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        synchronized V get(K key) {
+            Map.Entry<V, Long> entry = map.get(key);
+            return entry == null ? null : entry.getKey();
+        }
+
+        synchronized void put(K key, V value, long size) {
+            if (size > maxBytes) {
+                return;
+            }
+            Map.Entry<V, Long> old = map.put(key, Map.entry(value, size));
+            if (old != null) {
+                bytes -= old.getValue();
+            }
+            bytes += size;
+            Iterator<Map.Entry<V, Long>> it = map.values().iterator();
+            while (bytes > maxBytes && it.hasNext()) {
+                bytes -= it.next().getValue();
+                it.remove();
+            }
+        }
+    }
+}
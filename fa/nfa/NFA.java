@@ -10,13 +10,21 @@
 package fa.nfa;
 
 // Necessary imports for the functionality of the NFA class.
+import java.math.BigInteger;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
+import java.util.Random;
 import java.util.Set;
 import java.util.Stack;
 
@@ -33,6 +41,22 @@ public class NFA implements NFAInterface {
     private NFAState startState;
     private Set<Character> alphabet;
 
+    // Name lookup for the states, so building large automata stays linear.
+    private Map<String, NFAState> stateIndex;
+
+    // Results derived from the whole automaton: the per-state flags that
+    // cut simulations short, the prefilter and the determinized form. All
+    // are computed lazily and dropped whenever the automaton is modified.
+    private volatile Set<NFAState> liveStates;
+    private volatile Set<NFAState> universalStates;
+    private volatile NFAPrefilter prefilter;
+    private volatile DeterministicAutomaton determinized;
+
+    // States moved by accepts since the last change, which decides when
+    // the per-state flags are worth computing. Updated without locking; a
+    // lost update only delays the analysis.
+    private long simulatedWork;
+
     /**
      * Constructs an empty DFA object that is ready to be built.
      */
@@ -43,6 +67,7 @@ public class NFA implements NFAInterface {
         states = new LinkedHashSet<>();
         finalStates = new LinkedHashSet<>();
         alphabet = new LinkedHashSet<>();
+        stateIndex = new HashMap<>();
     }
 
     /**
@@ -53,13 +78,13 @@ public class NFA implements NFAInterface {
      *         already state with such name
      */
     public boolean addState(String name) {
-        for (NFAState state : states) {
-            if (state.getName().equals(name)) {
-                return false;
-            }
+        if (stateIndex.containsKey(name)) {
+            return false;
         }
         NFAState newState = new NFAState(name);
         states.add(newState);
+        stateIndex.put(name, newState);
+        invalidateAnalysis();
         return true;
     }
 
@@ -70,11 +95,11 @@ public class NFA implements NFAInterface {
      * @return true if successful and false if no state with such name exists
      */
     public boolean setFinal(String name) {
-        for (NFAState c : states) {
-            if (c.getName().equals(name)) {
-                finalStates.add(c);
-                return true;
-            }
+        NFAState c = stateIndex.get(name);
+        if (c != null) {
+            finalStates.add(c);
+            invalidateAnalysis();
+            return true;
         }
         return false;
     }
@@ -87,7 +112,10 @@ public class NFA implements NFAInterface {
      */
     public boolean setStart(String name) {
         if (states.contains(getState(name))) {
-            startState = (NFAState) getState(name);
+            if (startState != getState(name)) {
+                startState = (NFAState) getState(name);
+                invalidateAnalysis();
+            }
             return true;
         }
         return false;
@@ -100,6 +128,7 @@ public class NFA implements NFAInterface {
      */
     public void addSigma(char symbol) {
         alphabet.add(symbol);
+        invalidateAnalysis();
     }
 
     /**
@@ -121,23 +150,35 @@ public class NFA implements NFAInterface {
         // Start with the ε-closure of the initial state.
         Set<NFAState> currentStates = eClosure(startState);
 
+        // The dead and accept-all shortcuts need one pass over the whole
+        // automaton. It is only made once plain simulation has done as much
+        // work, so a few runs on a large NFA never pay for it.
+        boolean shortcuts = isAnalysisWorthwhile();
+        long work = 0;
+
+        // Index up to which an accept-all shortcut is known to be blocked by
+        // a symbol outside the alphabet, so the remainder is scanned once.
+        int blockedUntil = -1;
+
         // Process each character in the input string.
         for (int i = 0; i < s.length(); i++) {
-            char c = s.charAt(i);
-
-            Set<NFAState> nextStates = new HashSet<>();
-            System.out.println(nextStates);
 
-            // Try moving with the current character and accumulate new states.
-            for (NFAState state : currentStates) {
-                Set<NFAState> moveStates = getToState(state, c);
-                for (NFAState tostate : moveStates) {
-                    nextStates.addAll(eClosure(tostate));
+            // Stop as soon as the outcome can no longer change.
+            if (currentStates.isEmpty() || shortcuts && isDead(currentStates)) {
+                simulatedWork += work;
+                return false;
+            }
+            if (shortcuts && i > blockedUntil && isAcceptAll(currentStates)) {
+                blockedUntil = indexOfForeignSymbol(s, i);
+                if (blockedUntil < 0) {
+                    return true;
                 }
             }
 
-            currentStates = nextStates;
+            work += currentStates.size();
+            currentStates = nextStates(currentStates, s.charAt(i));
         }
+        simulatedWork += work;
 
         // If any of the current states are accepting, the string is accepted.
         for (NFAState state : currentStates) {
@@ -150,6 +191,266 @@ public class NFA implements NFAInterface {
         return false;
     }
 
+    /**
+     * Moves every active state on one input symbol and closes the result
+     * under ε-transitions
+     * 
+     * @param currentStates - the active states before the symbol
+     * @param c             - the input symbol
+     * @return the active states after the symbol
+     */
+    public Set<NFAState> nextStates(Set<NFAState> currentStates, char c) {
+        Set<NFAState> nextStates = new HashSet<>();
+
+        // Try moving with the current character and accumulate new states.
+        for (NFAState state : currentStates) {
+            Set<NFAState> moveStates = getToState(state, c);
+            for (NFAState tostate : moveStates) {
+                nextStates.addAll(eClosure(tostate));
+            }
+        }
+        return nextStates;
+    }
+
+    /**
+     * Returns the prefilter describing the first symbols and the literal
+     * every accepted string must contain, building it on first use. The
+     * analysis searches the whole automaton, so accepts does not use it;
+     * it pays off when many positions of one text are tried, as in
+     * {@link NFAScanner}.
+     *
+     * @return the prefilter for the current automaton
+     */
+    public NFAPrefilter getPrefilter() {
+        NFAPrefilter result = prefilter;
+        if (result == null) {
+            result = new NFAPrefilter(this);
+            prefilter = result;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the determinized form of the NFA, building it on first use
+     * 
+     * @return the equivalent partial DFA
+     * @throws IllegalStateException if the DFA would be too large
+     */
+    public DeterministicAutomaton getDeterminized() {
+        DeterministicAutomaton result = determinized;
+        if (result == null) {
+            result = Determinizer.determinize(this);
+            determinized = result;
+        }
+        return result;
+    }
+
+    /**
+     * Counts the accepted strings of length n by dynamic programming over
+     * the determinized form, without enumerating any strings
+     * 
+     * @param n - the length, at least 0
+     * @return the number of accepted strings of length n
+     */
+    public BigInteger countAccepted(int n) {
+        return getDeterminized().countAccepted(n);
+    }
+
+    /**
+     * Draws an accepted string of length n uniformly at random
+     * 
+     * @param n      - the length, at least 0
+     * @param random - the source of randomness
+     * @return the sampled string, or null if no string of length n is
+     *         accepted
+     */
+    public String sampleAccepted(int n, Random random) {
+        return getDeterminized().sampleAccepted(n, random);
+    }
+
+    /**
+     * Determines if some accepting state can still be reached from state,
+     * that is, whether an active copy in this state can lead to acceptance
+     * 
+     * @param state - a state of this NFA
+     * @return true if a final state is reachable from state
+     */
+    public boolean canStillAccept(NFAState state) {
+        return liveStates().contains(state);
+    }
+
+    /**
+     * Determines if every string over the alphabet is accepted from state,
+     * as with a final state that loops on every symbol
+     * 
+     * @param state - a state of this NFA
+     * @return true if state accepts every continuation over the alphabet
+     */
+    public boolean alwaysAccepts(NFAState state) {
+        return universalStates().contains(state);
+    }
+
+    /**
+     * Determines if no state of an active set can reach acceptance anymore
+     * 
+     * @param active - the current set of active states
+     * @return true if every continuation of the input is rejected
+     */
+    public boolean isDead(Set<NFAState> active) {
+        Set<NFAState> live = liveStates();
+        for (NFAState state : active) {
+            if (live.contains(state)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Determines if an active set accepts every continuation over the
+     * alphabet because one of its states does
+     * 
+     * @param active - the current set of active states
+     * @return true if every continuation over the alphabet is accepted
+     */
+    public boolean isAcceptAll(Set<NFAState> active) {
+        Set<NFAState> universal = universalStates();
+        if (universal.isEmpty()) {
+            return false;
+        }
+        for (NFAState state : active) {
+            if (universal.contains(state)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds the first symbol at or after from that is not a proper input
+     * symbol (not in the alphabet, or the epsilon label itself). An
+     * accept-all set only decides the run if there is no such symbol.
+     * 
+     * @param s    - the input string
+     * @param from - the first index to check
+     * @return the index of the first such symbol, or -1 if none exists
+     */
+    int indexOfForeignSymbol(String s, int from) {
+        for (int i = from; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == 'e' || !alphabet.contains(c)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the states from which some final state can be reached,
+     * computing them on first use by a backward search from the final
+     * states.
+     */
+    private Set<NFAState> liveStates() {
+        Set<NFAState> live = liveStates;
+        if (live != null) {
+            return live;
+        }
+
+        Map<NFAState, Set<NFAState>> predecessors = new HashMap<>();
+        for (NFAState state : states) {
+            for (Set<NFAState> targets : state.getTransitionList().values()) {
+                for (NFAState target : targets) {
+                    predecessors.computeIfAbsent(target, k -> new HashSet<>()).add(state);
+                }
+            }
+        }
+        live = new HashSet<>(finalStates);
+        Stack<NFAState> stack = new Stack<>();
+        stack.addAll(finalStates);
+        while (!stack.isEmpty()) {
+            for (NFAState pred : predecessors.getOrDefault(stack.pop(), Collections.emptySet())) {
+                if (live.add(pred)) {
+                    stack.push(pred);
+                }
+            }
+        }
+
+        liveStates = live;
+        return live;
+    }
+
+    /**
+     * Returns the states that accept every string over the alphabet. This
+     * is the greatest set U where each state's ε-closure holds a final
+     * state and, for every symbol, moves into U. It is found by starting
+     * from all states with a final state in their closure and removing
+     * states that fail the condition until nothing changes.
+     */
+    private Set<NFAState> universalStates() {
+        Set<NFAState> universal = universalStates;
+        if (universal != null) {
+            return universal;
+        }
+
+        Map<NFAState, Set<NFAState>> closures = new HashMap<>();
+        universal = new HashSet<>();
+        for (NFAState state : states) {
+            Set<NFAState> closure = eClosure(state);
+            closures.put(state, closure);
+            if (!Collections.disjoint(closure, finalStates)) {
+                universal.add(state);
+            }
+        }
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Iterator<NFAState> it = universal.iterator(); it.hasNext();) {
+                Set<NFAState> closure = closures.get(it.next());
+                for (char symbol : alphabet) {
+                    if (symbol == 'e') {
+                        continue;
+                    }
+                    boolean stays = false;
+                    for (NFAState member : closure) {
+                        if (!Collections.disjoint(member.getToStates(symbol), universal)) {
+                            stays = true;
+                            break;
+                        }
+                    }
+                    if (!stays) {
+                        it.remove();
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+        }
+
+        universalStates = universal;
+        return universal;
+    }
+
+    /**
+     * Determines if accepts should use the dead and accept-all shortcuts:
+     * once they are computed, or once earlier runs have moved at least as
+     * many states as the automaton has.
+     */
+    private boolean isAnalysisWorthwhile() {
+        return liveStates != null && universalStates != null || simulatedWork >= states.size();
+    }
+
+    /**
+     * Drops the cached per-state flags after the automaton changes.
+     */
+    private void invalidateAnalysis() {
+        liveStates = null;
+        universalStates = null;
+        prefilter = null;
+        determinized = null;
+        simulatedWork = 0;
+    }
+
     /**
      * Getter for Sigma
      * 
@@ -166,12 +467,50 @@ public class NFA implements NFAInterface {
      * @return state object or null
      */
     public State getState(String name) {
+        return stateIndex.get(name);
+    }
+
+    /**
+     * Returns every state of the NFA in the order it was added
+     * 
+     * @return read-only view of the state set
+     */
+    public Set<NFAState> getStates() {
+        return Collections.unmodifiableSet(states);
+    }
+
+    /**
+     * Returns the accepting states of the NFA
+     * 
+     * @return read-only view of the final state set
+     */
+    public Set<NFAState> getFinalStates() {
+        return Collections.unmodifiableSet(finalStates);
+    }
+
+    /**
+     * Returns the start state, or null if none has been set
+     * 
+     * @return the start state
+     */
+    public NFAState getStartState() {
+        return startState;
+    }
+
+    /**
+     * Counts the edges of the transition relation, counting each
+     * (source, symbol, target) triple once
+     * 
+     * @return the number of transitions
+     */
+    public int getTransitionCount() {
+        int count = 0;
         for (NFAState state : states) {
-            if (state.getName().equals(name)) {
-                return state;
+            for (Set<NFAState> targets : state.getTransitionList().values()) {
+                count += targets.size();
             }
         }
-        return null;
+        return count;
     }
 
     /**
@@ -181,12 +520,8 @@ public class NFA implements NFAInterface {
      * @return true if a state with that name exists and it is final
      */
     public boolean isFinal(String name) {
-        for (NFAState c : finalStates) {
-            if (c.getName().equals(name)) {
-                return true;
-            }
-        }
-        return false;
+        NFAState c = stateIndex.get(name);
+        return c != null && finalStates.contains(c);
     }
 
     /**
@@ -244,12 +579,13 @@ public class NFA implements NFAInterface {
                 if (c == 'e') {
                     // Ad the state to the vector itself; don't do anything else.
                     Set<NFAState> temp = getToState(currentState, c);
-                    // for(NFAState nfa: temp) {
-                    // eClosureSet.add(nfa);
-                    // }
-                    eClosureSet.addAll(temp);
-                    for (NFAState nfa : temp)
-                        stack.push(nfa);
+                    // Only follow states seen for the first time, so epsilon
+                    // cycles do not keep the search running forever.
+                    for (NFAState nfa : temp) {
+                        if (eClosureSet.add(nfa)) {
+                            stack.push(nfa);
+                        }
+                    }
                 }
             }
         }
@@ -305,6 +641,286 @@ public class NFA implements NFAInterface {
         return maxCopies;
     }
 
+    /**
+     * Determines if the NFA accepts no string at all
+     * 
+     * @return true if no final state is reachable from the start state
+     */
+    public boolean isEmpty() {
+        return startState == null || isDead(eClosure(startState));
+    }
+
+    /**
+     * Builds the product automaton accepting exactly the strings accepted
+     * by both this NFA and other. Only pairs reachable from the start pair
+     * that can still accept are materialized. A pair stands for the
+     * ε-closures of its two states: it moves on a symbol to every pair of
+     * targets both closures reach on it, and it is final when both
+     * closures hold a final state. Its epsilon transitions take an epsilon
+     * move on both sides at once, so an 'e' in the input is read as
+     * a.accepts and b.accepts read it, and following them while closing
+     * only adds pairs whose closures are already covered.
+     * 
+     * @param other - the second automaton
+     * @return the product NFA, with states named "(a,b)"
+     */
+    public NFA intersect(NFA other) {
+        NFA product = new NFA();
+        List<Character> symbols = commonSymbols(other);
+        for (char symbol : symbols) {
+            product.addSigma(symbol);
+        }
+        if (startState == null || other.startState == null) {
+            return product;
+        }
+        symbols.add('e');
+
+        Map<StatePair, String> names = new HashMap<>();
+        Map<StatePair, Map<Character, Set<String>>> delta = new LinkedHashMap<>();
+        Queue<StatePair> queue = new ArrayDeque<>();
+        StatePair start = new StatePair(startState, other.startState);
+        names.put(start, product.addPairState(start));
+        queue.add(start);
+        while (!queue.isEmpty()) {
+            StatePair pair = queue.poll();
+            Set<NFAState> closureA = eClosure(pair.a);
+            Set<NFAState> closureB = other.eClosure(pair.b);
+            Map<Character, Set<String>> row = new LinkedHashMap<>();
+            delta.put(pair, row);
+            for (char symbol : symbols) {
+                Set<NFAState> targetsB = other.liveTargets(closureB, symbol);
+                if (targetsB.isEmpty()) {
+                    continue;
+                }
+                for (NFAState a : liveTargets(closureA, symbol)) {
+                    for (NFAState b : targetsB) {
+                        StatePair next = new StatePair(a, b);
+                        if (!names.containsKey(next)) {
+                            names.put(next, product.addPairState(next));
+                            queue.add(next);
+                        }
+                        row.computeIfAbsent(symbol, k -> new LinkedHashSet<>()).add(names.get(next));
+                    }
+                }
+            }
+            if (!Collections.disjoint(closureA, finalStates) && !Collections.disjoint(closureB, other.finalStates)) {
+                product.setFinal(names.get(pair));
+            }
+        }
+
+        product.setStart(names.get(start));
+        for (Map.Entry<StatePair, Map<Character, Set<String>>> row : delta.entrySet()) {
+            for (Map.Entry<Character, Set<String>> entry : row.getValue().entrySet()) {
+                product.addTransition(names.get(row.getKey()), entry.getValue(), entry.getKey());
+            }
+        }
+        return product;
+    }
+
+    /**
+     * Returns the targets of a set of states on one label from which a
+     * final state can still be reached.
+     */
+    private Set<NFAState> liveTargets(Set<NFAState> from, char symbol) {
+        Set<NFAState> targets = new LinkedHashSet<>();
+        for (NFAState state : from) {
+            for (NFAState target : state.getToStates(symbol)) {
+                if (canStillAccept(target)) {
+                    targets.add(target);
+                }
+            }
+        }
+        return targets;
+    }
+
+    /**
+     * Finds a shortest string accepted by both this NFA and other without
+     * building the product automaton. Pairs of states are explored
+     * breadth-first (epsilon moves cost nothing) and the search stops at
+     * the first pair where both sides are final.
+     * 
+     * @param other - the second automaton
+     * @return a common string, or null if the languages do not overlap
+     */
+    public String findCommonString(NFA other) {
+        if (startState == null || other.startState == null) {
+            return null;
+        }
+        List<Character> symbols = commonSymbols(other);
+
+        // 0-1 breadth-first search: epsilon moves go to the front of the deque.
+        Map<StatePair, Integer> distance = new HashMap<>();
+        Map<StatePair, StatePair> parent = new HashMap<>();
+        Map<StatePair, Character> via = new HashMap<>();
+        Set<StatePair> settled = new HashSet<>();
+        Deque<StatePair> deque = new ArrayDeque<>();
+        StatePair start = new StatePair(startState, other.startState);
+        distance.put(start, 0);
+        deque.add(start);
+        while (!deque.isEmpty()) {
+            StatePair pair = deque.poll();
+            if (!settled.add(pair)) {
+                continue;
+            }
+            if (finalStates.contains(pair.a) && other.finalStates.contains(pair.b)) {
+                StringBuilder witness = new StringBuilder();
+                for (StatePair p = pair; parent.containsKey(p); p = parent.get(p)) {
+                    if (via.get(p) != 'e') {
+                        witness.append(via.get(p));
+                    }
+                }
+                return witness.reverse().toString();
+            }
+            for (Map.Entry<Character, StatePair> move : pairMoves(pair, other, symbols)) {
+                StatePair next = move.getValue();
+                boolean free = move.getKey() == 'e';
+                int d = distance.get(pair) + (free ? 0 : 1);
+                Integer known = distance.get(next);
+                if (known == null || d < known) {
+                    distance.put(next, d);
+                    parent.put(next, pair);
+                    via.put(next, move.getKey());
+                    if (free) {
+                        deque.addFirst(next);
+                    } else {
+                        deque.addLast(next);
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Determines if every string accepted by this NFA is also accepted by
+     * other, using the antichain algorithm instead of determinizing other
+     * 
+     * @param other - the automaton that should accept a superset
+     * @return true if the language of this NFA is a subset of other's
+     */
+    public boolean isSubsetOf(NFA other) {
+        return inclusionCounterexample(other) == null;
+    }
+
+    /**
+     * Determines if this NFA and other accept exactly the same strings
+     * 
+     * @param other - the automaton to compare with
+     * @return true if both languages are equal
+     */
+    public boolean isEquivalentTo(NFA other) {
+        return equivalenceCounterexample(other) == null;
+    }
+
+    /**
+     * Finds a string accepted by this NFA but not by other
+     * 
+     * @param other - the automaton that should accept a superset
+     * @return the counterexample, or null if the inclusion holds
+     */
+    public String inclusionCounterexample(NFA other) {
+        return new AntichainInclusion(this, other).counterexample();
+    }
+
+    /**
+     * Finds a string accepted by exactly one of this NFA and other
+     * 
+     * @param other - the automaton to compare with
+     * @return the counterexample, or null if the languages are equal
+     */
+    public String equivalenceCounterexample(NFA other) {
+        String witness = inclusionCounterexample(other);
+        if (witness == null) {
+            witness = other.inclusionCounterexample(this);
+        }
+        return witness;
+    }
+
+    /**
+     * Lists the moves of a pair of states that can still lead to acceptance
+     * on both sides, labelled with 'e' for a one-sided epsilon move.
+     */
+    private List<Map.Entry<Character, StatePair>> pairMoves(StatePair pair, NFA other, List<Character> symbols) {
+        List<Map.Entry<Character, StatePair>> moves = new ArrayList<>();
+        for (NFAState a : pair.a.getToStates('e')) {
+            if (canStillAccept(a)) {
+                moves.add(new AbstractMap.SimpleEntry<>('e', new StatePair(a, pair.b)));
+            }
+        }
+        for (NFAState b : pair.b.getToStates('e')) {
+            if (other.canStillAccept(b)) {
+                moves.add(new AbstractMap.SimpleEntry<>('e', new StatePair(pair.a, b)));
+            }
+        }
+        for (char symbol : symbols) {
+            for (NFAState a : pair.a.getToStates(symbol)) {
+                if (!canStillAccept(a)) {
+                    continue;
+                }
+                for (NFAState b : pair.b.getToStates(symbol)) {
+                    if (other.canStillAccept(b)) {
+                        moves.add(new AbstractMap.SimpleEntry<>(symbol, new StatePair(a, b)));
+                    }
+                }
+            }
+        }
+        return moves;
+    }
+
+    /**
+     * Returns the input symbols, other than the epsilon label, that both
+     * automata share.
+     */
+    private List<Character> commonSymbols(NFA other) {
+        List<Character> symbols = new ArrayList<>();
+        for (char symbol : alphabet) {
+            if (symbol != 'e' && other.alphabet.contains(symbol)) {
+                symbols.add(symbol);
+            }
+        }
+        return symbols;
+    }
+
+    /**
+     * Adds a state named after a product pair, adding a numeric suffix in
+     * the rare case that the name is already taken.
+     */
+    private String addPairState(StatePair pair) {
+        String name = "(" + pair.a.getName() + "," + pair.b.getName() + ")";
+        String candidate = name;
+        for (int i = 1; !addState(candidate); i++) {
+            candidate = name + "#" + i;
+        }
+        return candidate;
+    }
+
+    /**
+     * A state of the product of two automata.
+     */
+    private static final class StatePair {
+        private final NFAState a;
+        private final NFAState b;
+
+        StatePair(NFAState a, NFAState b) {
+            this.a = a;
+            this.b = b;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof StatePair)) {
+                return false;
+            }
+            StatePair other = (StatePair) o;
+            return a == other.a && b == other.b;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(a) + System.identityHashCode(b);
+        }
+    }
+
     /**
      * Adds the transition to the NFA's delta data structure
      * 
@@ -329,16 +945,33 @@ public class NFA implements NFAInterface {
                 return false;
             }
         }
-        for (NFAState state : states) {
-            for (String toStateName : toStates) {
-                if (state.getName().equals(fromState)) {
+        // Every target in the set gets its own edge, not just the first one.
+        NFAState from = (NFAState) getState(fromState);
+        for (String toStateName : toStates) {
+            from.addTransition(onSymb, (NFAState) getState(toStateName));
+        }
+        invalidateAnalysis();
+        return true;
+    }
 
-                    state.addTransition(onSymb, (NFAState) getState(toStateName));
-                    return true;
-                }
-            }
+    /**
+     * Adds an epsilon transition that records the current input position in
+     * capture register tag when it is taken. By convention group k starts
+     * at tag 2k and ends at tag 2k+1. Tags only affect {@link PikeVM};
+     * every other operation treats the edge as a plain epsilon transition.
+     * 
+     * @param fromState is the label of the state where the transition starts
+     * @param toState   is the label of the state where the transition ends
+     * @param tag       is the capture register to set, at least 0
+     * @return true if successful and false if one of the states don't exist or
+     *         the tag is negative
+     */
+    public boolean addTaggedTransition(String fromState, String toState, int tag) {
+        if (tag < 0 || !addTransition(fromState, Set.of(toState), 'e')) {
+            return false;
         }
-        return false;
+        ((NFAState) getState(fromState)).setTag((NFAState) getState(toState), tag);
+        return true;
     }
 
     /**
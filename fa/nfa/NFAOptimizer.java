@@ -0,0 +1,438 @@
+package fa.nfa;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Runs a pipeline of language-preserving rewrites over an NFA and
+ * records how many states and transitions each pass removed.
+ *
+ * The default pipeline trims useless states, collapses strongly connected
+ * components of epsilon transitions, merges forward bisimilar states,
+ * merges backward bisimilar states and trims once more. Every pass
+ * builds a fresh NFA; the input automaton is never modified.
+ */
+public class NFAOptimizer {
+
+    /**
+     * A single rewriting step of the pipeline.
+     */
+    public interface Pass {
+
+        /**
+         * @return a short label used in the reports
+         */
+        public String getName();
+
+        /**
+         * Rewrites the automaton without changing its language
+         *
+         * @param nfa - the automaton to rewrite, left untouched
+         * @return a new, equivalent automaton
+         */
+        public NFA apply(NFA nfa);
+    }
+
+    /**
+     * State and transition counts observed before and after one pass.
+     */
+    public static class PassReport {
+        private final String name;
+        private final int statesBefore;
+        private final int statesAfter;
+        private final int transitionsBefore;
+        private final int transitionsAfter;
+
+        public PassReport(String name, int statesBefore, int statesAfter, int transitionsBefore,
+                int transitionsAfter) {
+            this.name = name;
+            this.statesBefore = statesBefore;
+            this.statesAfter = statesAfter;
+            this.transitionsBefore = transitionsBefore;
+            this.transitionsAfter = transitionsAfter;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getStatesBefore() {
+            return statesBefore;
+        }
+
+        public int getStatesAfter() {
+            return statesAfter;
+        }
+
+        public int getTransitionsBefore() {
+            return transitionsBefore;
+        }
+
+        public int getTransitionsAfter() {
+            return transitionsAfter;
+        }
+
+        @Override
+        public String toString() {
+            return name + ": states " + statesBefore + " -> " + statesAfter
+                    + ", transitions " + transitionsBefore + " -> " + transitionsAfter;
+        }
+    }
+
+    /**
+     * Removes states that are unreachable from the start state or that
+     * cannot reach any final state. The start state is always kept.
+     */
+    public static final Pass TRIM = new Pass() {
+        public String getName() {
+            return "trim";
+        }
+
+        public NFA apply(NFA nfa) {
+            return trim(nfa);
+        }
+    };
+
+    /**
+     * Merges states that lie on a common cycle of epsilon transitions.
+     */
+    public static final Pass COLLAPSE_EPSILON_CYCLES = new Pass() {
+        public String getName() {
+            return "collapse-epsilon-cycles";
+        }
+
+        public NFA apply(NFA nfa) {
+            return collapseEpsilonCycles(nfa);
+        }
+    };
+
+    /**
+     * Merges states that accept the same suffixes by forward bisimulation.
+     */
+    public static final Pass MERGE_FORWARD = new Pass() {
+        public String getName() {
+            return "merge-forward-bisimilar";
+        }
+
+        public NFA apply(NFA nfa) {
+            return mergeBisimilar(nfa, true);
+        }
+    };
+
+    /**
+     * Merges states that are reached by the same prefixes by backward
+     * bisimulation.
+     */
+    public static final Pass MERGE_BACKWARD = new Pass() {
+        public String getName() {
+            return "merge-backward-bisimilar";
+        }
+
+        public NFA apply(NFA nfa) {
+            return mergeBisimilar(nfa, false);
+        }
+    };
+
+    private final List<Pass> passes;
+    private final List<PassReport> reports;
+
+    /**
+     * Creates an optimizer running the default pipeline.
+     */
+    public NFAOptimizer() {
+        this(Arrays.asList(TRIM, COLLAPSE_EPSILON_CYCLES, MERGE_FORWARD, MERGE_BACKWARD, TRIM));
+    }
+
+    /**
+     * Creates an optimizer running the given passes in order.
+     *
+     * @param passes - the pipeline
+     */
+    public NFAOptimizer(List<Pass> passes) {
+        this.passes = new ArrayList<>(passes);
+        this.reports = new ArrayList<>();
+    }
+
+    /**
+     * Runs every pass of the pipeline, replacing the reports of any
+     * previous run.
+     *
+     * @param nfa - the automaton to optimize, left untouched
+     * @return the optimized automaton
+     */
+    public NFA optimize(NFA nfa) {
+        reports.clear();
+        NFA current = nfa;
+        for (Pass pass : passes) {
+            int statesBefore = current.getStates().size();
+            int transitionsBefore = current.getTransitionCount();
+            current = pass.apply(current);
+            reports.add(new PassReport(pass.getName(), statesBefore, current.getStates().size(),
+                    transitionsBefore, current.getTransitionCount()));
+        }
+        return current;
+    }
+
+    /**
+     * Returns one report per pass of the last {@link #optimize(NFA)} call.
+     *
+     * @return the reports in pipeline order
+     */
+    public List<PassReport> getReports() {
+        return Collections.unmodifiableList(reports);
+    }
+
+    /**
+     * Keeps only the states that are both reachable and co-reachable.
+     */
+    static NFA trim(NFA nfa) {
+        if (nfa.getStartState() == null) {
+            return nfa;
+        }
+
+        // Forward search from the start state over every symbol.
+        Set<NFAState> reachable = new LinkedHashSet<>();
+        Deque<NFAState> work = new ArrayDeque<>();
+        reachable.add(nfa.getStartState());
+        work.push(nfa.getStartState());
+        Map<NFAState, Set<NFAState>> predecessors = new HashMap<>();
+        while (!work.isEmpty()) {
+            NFAState state = work.pop();
+            for (Set<NFAState> targets : state.getTransitionList().values()) {
+                for (NFAState target : targets) {
+                    predecessors.computeIfAbsent(target, k -> new LinkedHashSet<>()).add(state);
+                    if (reachable.add(target)) {
+                        work.push(target);
+                    }
+                }
+            }
+        }
+
+        // Backward search from the final states over the reachable part.
+        Set<NFAState> useful = new LinkedHashSet<>();
+        for (NFAState state : nfa.getFinalStates()) {
+            if (reachable.contains(state) && useful.add(state)) {
+                work.push(state);
+            }
+        }
+        while (!work.isEmpty()) {
+            NFAState state = work.pop();
+            for (NFAState pred : predecessors.getOrDefault(state, Collections.emptySet())) {
+                if (useful.add(pred)) {
+                    work.push(pred);
+                }
+            }
+        }
+        useful.add(nfa.getStartState());
+
+        Map<NFAState, Integer> blockOf = new HashMap<>();
+        int block = 0;
+        for (NFAState state : nfa.getStates()) {
+            if (useful.contains(state)) {
+                blockOf.put(state, block++);
+            }
+        }
+        return quotient(nfa, blockOf);
+    }
+
+    /**
+     * Merges every strongly connected component of the epsilon graph into
+     * one state using an iterative version of Tarjan's algorithm.
+     */
+    static NFA collapseEpsilonCycles(NFA nfa) {
+        List<NFAState> order = new ArrayList<>(nfa.getStates());
+        Map<NFAState, Integer> index = new HashMap<>();
+        Map<NFAState, Integer> lowLink = new HashMap<>();
+        Map<NFAState, Integer> blockOf = new HashMap<>();
+        Deque<NFAState> sccStack = new ArrayDeque<>();
+        Set<NFAState> onStack = new HashSet<>();
+        int counter = 0;
+        int block = 0;
+
+        for (NFAState root : order) {
+            if (index.containsKey(root)) {
+                continue;
+            }
+            // Each frame is a state and an iterator over its epsilon targets.
+            Deque<Object[]> callStack = new ArrayDeque<>();
+            index.put(root, counter);
+            lowLink.put(root, counter++);
+            sccStack.push(root);
+            onStack.add(root);
+            callStack.push(new Object[] { root, new ArrayList<>(root.getToStates('e')).iterator() });
+
+            while (!callStack.isEmpty()) {
+                Object[] frame = callStack.peek();
+                NFAState state = (NFAState) frame[0];
+                @SuppressWarnings("unchecked")
+                Iterator<NFAState> it = (Iterator<NFAState>) frame[1];
+                if (it.hasNext()) {
+                    NFAState next = it.next();
+                    if (!index.containsKey(next)) {
+                        index.put(next, counter);
+                        lowLink.put(next, counter++);
+                        sccStack.push(next);
+                        onStack.add(next);
+                        callStack.push(new Object[] { next, new ArrayList<>(next.getToStates('e')).iterator() });
+                    } else if (onStack.contains(next)) {
+                        lowLink.put(state, Math.min(lowLink.get(state), index.get(next)));
+                    }
+                    continue;
+                }
+
+                // All successors visited; close the component if this is its root.
+                callStack.pop();
+                if (lowLink.get(state).equals(index.get(state))) {
+                    NFAState member;
+                    do {
+                        member = sccStack.pop();
+                        onStack.remove(member);
+                        blockOf.put(member, block);
+                    } while (member != state);
+                    block++;
+                }
+                if (!callStack.isEmpty()) {
+                    NFAState parent = (NFAState) callStack.peek()[0];
+                    lowLink.put(parent, Math.min(lowLink.get(parent), lowLink.get(state)));
+                }
+            }
+        }
+        return quotient(nfa, blockOf);
+    }
+
+    /**
+     * Computes the coarsest forward (or backward) bisimulation by repeated
+     * signature refinement and merges each equivalence class. Epsilon is
+     * treated as an ordinary label, which keeps the quotient exact.
+     */
+    static NFA mergeBisimilar(NFA nfa, boolean forward) {
+        List<NFAState> order = new ArrayList<>(nfa.getStates());
+        if (order.isEmpty()) {
+            return nfa;
+        }
+
+        // Edges in the direction the signatures look at.
+        Map<NFAState, Map<Character, Set<NFAState>>> edges = new HashMap<>();
+        for (NFAState state : order) {
+            edges.put(state, new HashMap<>());
+        }
+        for (NFAState state : order) {
+            for (Map.Entry<Character, Set<NFAState>> entry : state.getTransitionList().entrySet()) {
+                for (NFAState target : entry.getValue()) {
+                    if (forward) {
+                        edges.get(state).computeIfAbsent(entry.getKey(), k -> new LinkedHashSet<>()).add(target);
+                    } else {
+                        edges.get(target).computeIfAbsent(entry.getKey(), k -> new LinkedHashSet<>()).add(state);
+                    }
+                }
+            }
+        }
+
+        // Forward classes must agree on finality, backward ones on being initial.
+        Map<NFAState, Integer> blockOf = new HashMap<>();
+        for (NFAState state : order) {
+            boolean marked = forward ? nfa.getFinalStates().contains(state) : state == nfa.getStartState();
+            blockOf.put(state, marked ? 1 : 0);
+        }
+
+        int blocks = -1;
+        while (true) {
+            Map<List<Object>, Integer> signatures = new HashMap<>();
+            Map<NFAState, Integer> refined = new HashMap<>();
+            for (NFAState state : order) {
+                TreeMap<Character, TreeSet<Integer>> moves = new TreeMap<>();
+                for (Map.Entry<Character, Set<NFAState>> entry : edges.get(state).entrySet()) {
+                    TreeSet<Integer> targetBlocks = new TreeSet<>();
+                    for (NFAState target : entry.getValue()) {
+                        targetBlocks.add(blockOf.get(target));
+                    }
+                    moves.put(entry.getKey(), targetBlocks);
+                }
+                List<Object> signature = Arrays.asList(blockOf.get(state), moves);
+                Integer id = signatures.get(signature);
+                if (id == null) {
+                    id = signatures.size();
+                    signatures.put(signature, id);
+                }
+                refined.put(state, id);
+            }
+            blockOf = refined;
+            if (signatures.size() == blocks) {
+                break;
+            }
+            blocks = signatures.size();
+        }
+        return quotient(nfa, blockOf);
+    }
+
+    /**
+     * Builds the automaton whose states are the blocks of the given
+     * partition. States missing from the partition are dropped along with
+     * their transitions. A block is named after its first member, final if
+     * any member is final and the start block if it holds the start state.
+     */
+    static NFA quotient(NFA nfa, Map<NFAState, Integer> blockOf) {
+        NFA result = new NFA();
+        for (char symbol : nfa.getSigma()) {
+            result.addSigma(symbol);
+        }
+
+        Map<Integer, String> names = new LinkedHashMap<>();
+        for (NFAState state : nfa.getStates()) {
+            Integer block = blockOf.get(state);
+            if (block != null && !names.containsKey(block)) {
+                names.put(block, state.getName());
+                result.addState(state.getName());
+            }
+        }
+        for (NFAState state : nfa.getFinalStates()) {
+            Integer block = blockOf.get(state);
+            if (block != null) {
+                result.setFinal(names.get(block));
+            }
+        }
+        if (nfa.getStartState() != null && blockOf.containsKey(nfa.getStartState())) {
+            result.setStart(names.get(blockOf.get(nfa.getStartState())));
+        }
+
+        // Gather the merged edges first so each (block, symbol) pair is added once.
+        Map<Integer, Map<Character, Set<String>>> delta = new LinkedHashMap<>();
+        for (NFAState state : nfa.getStates()) {
+            Integer from = blockOf.get(state);
+            if (from == null) {
+                continue;
+            }
+            for (Map.Entry<Character, Set<NFAState>> entry : state.getTransitionList().entrySet()) {
+                for (NFAState target : entry.getValue()) {
+                    Integer to = blockOf.get(target);
+                    // Epsilon self-loops are kept even though they never
+                    // change a closure: reading 'e' as input follows them.
+                    if (to == null) {
+                        continue;
+                    }
+                    delta.computeIfAbsent(from, k -> new LinkedHashMap<>())
+                            .computeIfAbsent(entry.getKey(), k -> new LinkedHashSet<>()).add(names.get(to));
+                }
+            }
+        }
+        for (Map.Entry<Integer, Map<Character, Set<String>>> row : delta.entrySet()) {
+            for (Map.Entry<Character, Set<String>> entry : row.getValue().entrySet()) {
+                result.addTransition(names.get(row.getKey()), entry.getValue(), entry.getKey());
+            }
+        }
+        return result;
+    }
+}
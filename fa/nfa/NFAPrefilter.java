@@ -0,0 +1,317 @@
+package fa.nfa;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Cheap necessary conditions for acceptance extracted from the transition
+ * graph of an NFA: the symbols an accepted string can start with, whether
+ * the empty string is accepted, and a literal that every accepted string
+ * contains. Matching code checks these with String.indexOf before running
+ * the full simulation.
+ *
+ * The conditions treat 'e' purely as the epsilon label. Inputs that
+ * contain the character 'e' are never filtered, because the simulator
+ * also follows epsilon transitions when it reads that character.
+ */
+public class NFAPrefilter {
+
+    // Longest literal the analysis tries to grow.
+    private static final int MAX_LITERAL_LENGTH = 16;
+
+    // Upper bound on (state, match progress) pairs explored while growing
+    // literals, so very large automata only pay for a bounded analysis.
+    private static final long LITERAL_BUDGET = 1L << 22;
+
+    private final boolean emptyLanguage;
+    private final boolean acceptsEmpty;
+    private final Set<Character> firstSymbols;
+    private final BitSet firstTable;
+    private final String requiredLiteral;
+
+    /**
+     * Analyzes the automaton as it is now. Later changes to the NFA are
+     * not reflected.
+     *
+     * @param nfa - the automaton to analyze
+     */
+    public NFAPrefilter(NFA nfa) {
+        // First symbols: anything read from the start closure that leads to a
+        // state from which acceptance is still possible.
+        Set<NFAState> startClosure = nfa.eClosure(nfa.getStartState());
+        emptyLanguage = nfa.isDead(startClosure);
+        acceptsEmpty = !Collections.disjoint(startClosure, nfa.getFinalStates());
+        Set<Character> first = new LinkedHashSet<>();
+        for (NFAState state : startClosure) {
+            for (char symbol : nfa.getSigma()) {
+                if (symbol == 'e') {
+                    continue;
+                }
+                for (NFAState target : state.getToStates(symbol)) {
+                    if (nfa.canStillAccept(target)) {
+                        first.add(symbol);
+                        break;
+                    }
+                }
+            }
+        }
+        firstSymbols = Collections.unmodifiableSet(first);
+        firstTable = new BitSet();
+        for (char symbol : first) {
+            firstTable.set(symbol);
+        }
+
+        // A literal is only worth looking for if the empty string is rejected.
+        if (emptyLanguage || acceptsEmpty) {
+            requiredLiteral = "";
+        } else {
+            requiredLiteral = new LiteralAnalysis(nfa).longestRequiredLiteral();
+        }
+    }
+
+    /**
+     * @return true if the automaton accepts no string at all
+     */
+    public boolean isEmptyLanguage() {
+        return emptyLanguage;
+    }
+
+    /**
+     * @return true if the empty string is accepted
+     */
+    public boolean acceptsEmpty() {
+        return acceptsEmpty;
+    }
+
+    /**
+     * Returns the symbols a non-empty accepted string can start with
+     *
+     * @return read-only set of first symbols
+     */
+    public Set<Character> getFirstSymbols() {
+        return firstSymbols;
+    }
+
+    /**
+     * Returns a literal contained in every accepted string
+     *
+     * @return the literal, or the empty string if none was found
+     */
+    public String getRequiredLiteral() {
+        return requiredLiteral;
+    }
+
+    /**
+     * Checks the necessary conditions for s to be accepted. A false result
+     * is definite; a true result still needs the full simulation.
+     *
+     * @param s - the whole input string
+     * @return false if s cannot be in the language
+     */
+    public boolean mayAccept(String s) {
+        if (emptyLanguage) {
+            return false;
+        }
+        if (s.isEmpty()) {
+            return acceptsEmpty;
+        }
+        if (s.indexOf('e') >= 0) {
+            return true;
+        }
+        if (!firstTable.get(s.charAt(0))) {
+            return false;
+        }
+        return requiredLiteral.isEmpty() || s.contains(requiredLiteral);
+    }
+
+    /**
+     * Finds the next position where a non-empty match could start, that is,
+     * the next occurrence of a first symbol
+     *
+     * @param s    - the input string
+     * @param from - the first position to consider
+     * @return the position, or -1 if there is none
+     */
+    public int nextCandidate(String s, int from) {
+        // A single first symbol is the common case; indexOf is intrinsified.
+        if (firstSymbols.size() == 1) {
+            return s.indexOf(firstSymbols.iterator().next(), from);
+        }
+        for (int i = Math.max(from, 0); i < s.length(); i++) {
+            if (firstTable.get(s.charAt(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Integer-indexed copy of the transition graph, kept only while the
+     * required literal is being computed.
+     */
+    private static class LiteralAnalysis {
+        private final char[] symbols;
+        private final int[][] epsilon;
+        private final int[][][] delta;
+        private final boolean[] accepting;
+        private final int start;
+        private long budget;
+
+        LiteralAnalysis(NFA nfa) {
+            List<NFAState> order = new ArrayList<>(nfa.getStates());
+            Map<NFAState, Integer> index = new HashMap<>();
+            for (NFAState state : order) {
+                index.put(state, index.size());
+            }
+
+            List<Character> real = new ArrayList<>();
+            for (char symbol : nfa.getSigma()) {
+                if (symbol != 'e') {
+                    real.add(symbol);
+                }
+            }
+            symbols = new char[real.size()];
+            for (int i = 0; i < symbols.length; i++) {
+                symbols[i] = real.get(i);
+            }
+
+            epsilon = new int[order.size()][];
+            delta = new int[order.size()][symbols.length][];
+            accepting = new boolean[order.size()];
+            for (int q = 0; q < order.size(); q++) {
+                NFAState state = order.get(q);
+                epsilon[q] = indices(state.getToStates('e'), index);
+                for (int a = 0; a < symbols.length; a++) {
+                    delta[q][a] = indices(state.getToStates(symbols[a]), index);
+                }
+                accepting[q] = nfa.getFinalStates().contains(state);
+            }
+            start = index.get(nfa.getStartState());
+        }
+
+        /**
+         * Grows required literals greedily, first to the right and then to the
+         * left, from every required single symbol and keeps the longest one.
+         */
+        private String longestRequiredLiteral() {
+            budget = LITERAL_BUDGET;
+            String best = "";
+            for (char seed : symbols) {
+                // Symbols inside an earlier literal are usually covered by it.
+                if (best.indexOf(seed) >= 0 || !isRequired(String.valueOf(seed))) {
+                    continue;
+                }
+                String literal = String.valueOf(seed);
+                boolean grown = true;
+                while (grown && literal.length() < MAX_LITERAL_LENGTH) {
+                    grown = false;
+                    for (char symbol : symbols) {
+                        if (isRequired(literal + symbol)) {
+                            literal = literal + symbol;
+                            grown = true;
+                            break;
+                        }
+                    }
+                }
+                grown = true;
+                while (grown && literal.length() < MAX_LITERAL_LENGTH) {
+                    grown = false;
+                    for (char symbol : symbols) {
+                        if (isRequired(symbol + literal)) {
+                            literal = symbol + literal;
+                            grown = true;
+                            break;
+                        }
+                    }
+                }
+                if (literal.length() > best.length()) {
+                    best = literal;
+                }
+            }
+            return best;
+        }
+
+        /**
+         * Determines if every accepted string contains literal. Runs the NFA in
+         * product with the KMP automaton of the literal, cutting any branch that
+         * completes the literal; the literal is required exactly when no final
+         * state is reachable in that product. Running out of budget answers
+         * false, which only makes the literal shorter.
+         */
+        private boolean isRequired(String literal) {
+            int m = literal.length();
+            int[][] kmp = kmpTable(literal);
+            BitSet seen = new BitSet();
+            Deque<int[]> work = new ArrayDeque<>();
+            seen.set(start * m);
+            work.push(new int[] { start, 0 });
+            while (!work.isEmpty()) {
+                if (--budget < 0) {
+                    return false;
+                }
+                int[] pair = work.pop();
+                int q = pair[0];
+                int k = pair[1];
+                if (accepting[q]) {
+                    return false;
+                }
+                for (int target : epsilon[q]) {
+                    if (!seen.get(target * m + k)) {
+                        seen.set(target * m + k);
+                        work.push(new int[] { target, k });
+                    }
+                }
+                for (int a = 0; a < symbols.length; a++) {
+                    int next = kmp[k][a];
+                    if (next == m) {
+                        continue;
+                    }
+                    for (int target : delta[q][a]) {
+                        if (!seen.get(target * m + next)) {
+                            seen.set(target * m + next);
+                            work.push(new int[] { target, next });
+                        }
+                    }
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Builds the KMP transition table: entry [k][a] is the length of the
+         * longest prefix of literal that is a suffix of literal[0..k) + a.
+         */
+        private int[][] kmpTable(String literal) {
+            int m = literal.length();
+            int[][] table = new int[m][symbols.length];
+            for (int k = 0; k < m; k++) {
+                for (int a = 0; a < symbols.length; a++) {
+                    String read = literal.substring(0, k) + symbols[a];
+                    int length = Math.min(read.length(), m);
+                    while (length > 0 && !read.endsWith(literal.substring(0, length))) {
+                        length--;
+                    }
+                    table[k][a] = length;
+                }
+            }
+            return table;
+        }
+
+        private static int[] indices(Set<NFAState> targets, Map<NFAState, Integer> index) {
+            int[] result = new int[targets.size()];
+            int i = 0;
+            for (NFAState target : targets) {
+                result[i++] = index.get(target);
+            }
+            return result;
+        }
+    }
+}
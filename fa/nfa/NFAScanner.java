@@ -0,0 +1,166 @@
+package fa.nfa;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Searches strings for substrings accepted by an NFA. Candidate start
+ * positions come from the automaton's {@link NFAPrefilter}: the required
+ * literal bounds the region that can hold a match, and only positions
+ * holding a first symbol are simulated.
+ */
+public class NFAScanner {
+
+    /**
+     * A matched region [start, end) of the input.
+     */
+    public static class Match {
+        private final int start;
+        private final int end;
+
+        public Match(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        public int getStart() {
+            return start;
+        }
+
+        public int getEnd() {
+            return end;
+        }
+
+        @Override
+        public String toString() {
+            return "[" + start + ", " + end + ")";
+        }
+    }
+
+    private final NFA nfa;
+
+    /**
+     * @param nfa - the automaton whose language is searched for
+     */
+    public NFAScanner(NFA nfa) {
+        this.nfa = nfa;
+    }
+
+    /**
+     * Finds the leftmost-longest accepted substring starting at or after
+     * from
+     *
+     * @param s    - the input string
+     * @param from - the first start position to consider
+     * @return the match, or null if no substring from there is accepted
+     */
+    public Match find(String s, int from) {
+        return find(s, from, s.lastIndexOf('e'), lastLiteral(s));
+    }
+
+    /**
+     * Finds all non-overlapping leftmost-longest accepted substrings
+     *
+     * @param s - the input string
+     * @return the matches in order of position
+     */
+    public List<Match> findAll(String s) {
+        if (nfa.getPrefilter().isEmptyLanguage()) {
+            return Collections.emptyList();
+        }
+        // Searched once for the whole string, not once per match.
+        int lastEpsilon = s.lastIndexOf('e');
+        int lastLiteral = lastLiteral(s);
+        List<Match> matches = new ArrayList<>();
+        int from = 0;
+        while (from <= s.length()) {
+            Match match = find(s, from, lastEpsilon, lastLiteral);
+            if (match == null) {
+                break;
+            }
+            matches.add(match);
+            // Empty matches still have to make progress.
+            from = match.getEnd() > match.getStart() ? match.getEnd() : match.getStart() + 1;
+        }
+        return matches;
+    }
+
+    /**
+     * Finds the leftmost-longest match at or after from, given where the
+     * last 'e' and the last occurrence of the required literal are in s
+     */
+    private Match find(String s, int from, int lastEpsilon, int lastLiteral) {
+        NFAPrefilter prefilter = nfa.getPrefilter();
+        if (prefilter.isEmptyLanguage() || from > s.length()) {
+            return null;
+        }
+        if (prefilter.acceptsEmpty()) {
+            // Every position holds at least the empty match.
+            return matchAt(s, from);
+        }
+
+        // The filters assume 'e' is only ever the epsilon label.
+        boolean filtered = lastEpsilon < from;
+        int lastStart = s.length() - 1;
+        if (filtered && !prefilter.getRequiredLiteral().isEmpty()) {
+            // A match starting after the last occurrence cannot contain it.
+            if (lastLiteral < from) {
+                return null;
+            }
+            lastStart = lastLiteral;
+        }
+
+        for (int i = from; i <= lastStart; i++) {
+            if (filtered) {
+                i = prefilter.nextCandidate(s, i);
+                if (i < 0 || i > lastStart) {
+                    return null;
+                }
+            }
+            Match match = matchAt(s, i);
+            if (match != null) {
+                return match;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the start of the last occurrence of the required literal in
+     * s, or -1 if it does not occur or there is no literal
+     */
+    private int lastLiteral(String s) {
+        String literal = nfa.getPrefilter().getRequiredLiteral();
+        return literal.isEmpty() ? -1 : s.lastIndexOf(literal);
+    }
+
+    /**
+     * Runs the automaton from position start and remembers the last
+     * position at which it was in an accepting state.
+     */
+    private Match matchAt(String s, int start) {
+        Set<NFAState> currentStates = nfa.eClosure(nfa.getStartState());
+        int end = containsFinal(currentStates) ? start : -1;
+        for (int i = start; i < s.length(); i++) {
+            if (nfa.isDead(currentStates)) {
+                break;
+            }
+            currentStates = nfa.nextStates(currentStates, s.charAt(i));
+            if (containsFinal(currentStates)) {
+                end = i + 1;
+            }
+        }
+        return end < 0 ? null : new Match(start, end);
+    }
+
+    private boolean containsFinal(Set<NFAState> currentStates) {
+        for (NFAState state : currentStates) {
+            if (nfa.getFinalStates().contains(state)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
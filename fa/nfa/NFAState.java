@@ -2,6 +2,7 @@ package fa.nfa;
 
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
 import fa.State;
@@ -11,9 +12,13 @@ public class NFAState extends State {
     // Changed to store a Set of NFAStates for each character
     private HashMap<Character, Set<NFAState>> transitionList;
 
+    // Capture tags on epsilon transitions, keyed by target state
+    private HashMap<NFAState, Integer> epsilonTags;
+
     public NFAState(String name) {
         super(name);
         this.transitionList = new HashMap<>();
+        this.epsilonTags = new HashMap<>();
     }
 
     // Add a transition from this state to another state
@@ -22,8 +27,9 @@ public class NFAState extends State {
         Set<NFAState> stateSet = transitionList.get(symb);
 
         if (stateSet == null) {
-            // If no current set, create one
-            stateSet = new HashSet<>();
+            // If no current set, create one. Insertion order is kept because
+            // it is the priority order used when extracting captures.
+            stateSet = new LinkedHashSet<>();
             transitionList.put(symb, stateSet);
         }
 
@@ -38,6 +44,16 @@ public class NFAState extends State {
         return transitionList.getOrDefault(symb, new HashSet<>()); // return an empty set if no transitions exist
     }
 
+    // Tag the epsilon transition from this state to the given state
+    public void setTag(NFAState state, int tag) {
+        epsilonTags.put(state, tag);
+    }
+
+    // Get the tag on the epsilon transition to the given state, or -1 if it has none
+    public int getTag(NFAState state) {
+        return epsilonTags.getOrDefault(state, -1);
+    }
+
     /**
      * Returns the TransitionList for the associated NFAState.
      * 
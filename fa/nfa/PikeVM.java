@@ -0,0 +1,192 @@
+package fa.nfa;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Extracts capture groups from a full-string match without backtracking.
+ * Every active state is a thread carrying its own capture registers;
+ * threads are kept in priority order and when two reach the same state
+ * only the higher priority one survives. Each input symbol therefore costs
+ * at most one visit per state, so a run takes O(length * states) time and
+ * O(states * registers) memory no matter what the input looks like.
+ *
+ * Registers are set by tagged epsilon transitions, see
+ * {@link NFA#addTaggedTransition(String, String, int)}. Priority follows
+ * insertion order: targets added first are preferred, and a thread that
+ * stays in a state is preferred over one that leaves it by epsilon.
+ * As in {@link NFA#accepts(String)}, reading the character 'e' follows
+ * epsilon transitions; tags are not recorded on that step.
+ */
+public class PikeVM {
+
+    /**
+     * The registers of the winning thread of a successful match.
+     */
+    public static class Captures {
+        private final String input;
+        private final int[] registers;
+
+        Captures(String input, int[] registers) {
+            this.input = input;
+            this.registers = registers;
+        }
+
+        /**
+         * @return the number of groups that have registers
+         */
+        public int groupCount() {
+            return registers.length / 2;
+        }
+
+        /**
+         * @param group - the group number
+         * @return the start of the group, or -1 if it did not participate
+         */
+        public int getStart(int group) {
+            return registers[2 * group];
+        }
+
+        /**
+         * @param group - the group number
+         * @return the end of the group, or -1 if it did not participate
+         */
+        public int getEnd(int group) {
+            return registers[2 * group + 1];
+        }
+
+        /**
+         * @param group - the group number
+         * @return the captured text, or null if the group did not participate
+         */
+        public String group(int group) {
+            int start = getStart(group);
+            int end = getEnd(group);
+            return start < 0 || end < start ? null : input.substring(start, end);
+        }
+    }
+
+    /**
+     * An ordered list of threads with at most one thread per state.
+     */
+    private static class ThreadList {
+        final NFAState[] states;
+        final int[][] registers;
+        final Set<NFAState> seen = new HashSet<>();
+        int size;
+
+        ThreadList(int capacity) {
+            states = new NFAState[capacity];
+            registers = new int[capacity][];
+        }
+
+        void clear() {
+            Arrays.fill(registers, 0, size, null);
+            seen.clear();
+            size = 0;
+        }
+    }
+
+    private final NFA nfa;
+    private final int registerCount;
+
+    /**
+     * @param nfa - the tagged automaton; later changes to it are not seen
+     *            by the register count
+     */
+    public PikeVM(NFA nfa) {
+        this.nfa = nfa;
+        int maxTag = -1;
+        for (NFAState state : nfa.getStates()) {
+            for (NFAState target : state.getToStates('e')) {
+                maxTag = Math.max(maxTag, state.getTag(target));
+            }
+        }
+        // Round up so every group has both a start and an end register.
+        registerCount = (maxTag + 2) / 2 * 2;
+    }
+
+    /**
+     * Matches the whole input and returns the captures of the highest
+     * priority accepting thread
+     *
+     * @param s - the input string; "e" is the empty string as in accepts
+     * @return the captures, or null if s is not accepted
+     */
+    public Captures match(String s) {
+        if ("e".equals(s)) {
+            s = "";
+        }
+        if (nfa.getStartState() == null) {
+            return null;
+        }
+        int capacity = nfa.getStates().size();
+        ThreadList current = new ThreadList(capacity);
+        ThreadList next = new ThreadList(capacity);
+        int[] empty = new int[registerCount];
+        Arrays.fill(empty, -1);
+        addThread(current, nfa.getStartState(), empty, 0);
+
+        for (int i = 0; i < s.length() && current.size > 0; i++) {
+            char c = s.charAt(i);
+            next.clear();
+            for (int t = 0; t < current.size; t++) {
+                for (NFAState target : current.states[t].getToStates(c)) {
+                    addThread(next, target, current.registers[t], i + 1);
+                }
+            }
+            ThreadList swap = current;
+            current = next;
+            next = swap;
+        }
+
+        for (int t = 0; t < current.size; t++) {
+            if (nfa.getFinalStates().contains(current.states[t])) {
+                return new Captures(s, current.registers[t]);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds a thread for state and every state on its epsilon closure, in
+     * priority order, skipping states a higher priority thread already
+     * holds. Register arrays are never modified after creation, so untagged
+     * edges share them and tagged edges copy them.
+     */
+    private void addThread(ThreadList list, NFAState state, int[] registers, int position) {
+        Deque<Object[]> stack = new ArrayDeque<>();
+        stack.push(new Object[] { state, registers });
+        while (!stack.isEmpty()) {
+            Object[] frame = stack.pop();
+            NFAState current = (NFAState) frame[0];
+            int[] regs = (int[]) frame[1];
+            if (list.seen.contains(current) || !nfa.canStillAccept(current)) {
+                continue;
+            }
+            list.seen.add(current);
+            list.states[list.size] = current;
+            list.registers[list.size] = regs;
+            list.size++;
+
+            // Push in reverse so the first target added is explored first.
+            Object[][] frames = new Object[current.getToStates('e').size()][];
+            int f = 0;
+            for (NFAState target : current.getToStates('e')) {
+                int tag = current.getTag(target);
+                int[] targetRegs = regs;
+                if (tag >= 0) {
+                    targetRegs = regs.clone();
+                    targetRegs[tag] = position;
+                }
+                frames[f++] = new Object[] { target, targetRegs };
+            }
+            for (int k = frames.length - 1; k >= 0; k--) {
+                stack.push(frames[k]);
+            }
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package fa.nfa.server;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A benchmarking client for {@link MatchServer}. A fixed number of
+ * concurrent callers send requests back to back, each on its own virtual
+ * thread where available, and the client reports throughput and latency
+ * percentiles as seen from outside the server.
+ */
+public class LoadGenerator {
+
+    private final URI base;
+    private final ExecutorService executor;
+    private final HttpClient client;
+
+    /**
+     * The outcome of one benchmark run.
+     */
+    public static class Result {
+        private final long[] latencies;
+        private final long errors;
+        private final double seconds;
+
+        Result(long[] latencies, long errors, double seconds) {
+            this.latencies = latencies;
+            this.errors = errors;
+            this.seconds = seconds;
+            Arrays.sort(latencies);
+        }
+
+        /**
+         * @return the number of requests sent
+         */
+        public int getRequestCount() {
+            return latencies.length;
+        }
+
+        /**
+         * @return the number of requests that failed or returned an error
+         */
+        public long getErrorCount() {
+            return errors;
+        }
+
+        /**
+         * @return requests completed per second
+         */
+        public double getThroughput() {
+            return latencies.length / seconds;
+        }
+
+        /**
+         * @param percentile - between 0 and 100
+         * @return the latency at that percentile in microseconds
+         */
+        public long getLatencyPercentileMicros(double percentile) {
+            if (latencies.length == 0) {
+                return 0;
+            }
+            int rank = (int) Math.ceil(latencies.length * percentile / 100);
+            return latencies[Math.max(0, rank - 1)] / 1000;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d requests, %d errors in %.2f s: %.0f requests/s, "
+                    + "p50 %d us, p99 %d us, max %d us", getRequestCount(), errors, seconds, getThroughput(),
+                    getLatencyPercentileMicros(50), getLatencyPercentileMicros(99),
+                    getLatencyPercentileMicros(100));
+        }
+    }
+
+    /**
+     * @param base - the server address, e.g. http://localhost:8361/
+     */
+    public LoadGenerator(URI base) {
+        this.base = base;
+        executor = MatchServer.newRequestExecutor();
+        // The server speaks HTTP/1.1 only; skip the HTTP/2 upgrade attempt.
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).executor(executor).build();
+    }
+
+    /**
+     * Sends one request and waits for the answer
+     *
+     * @param operation - accepts or maxCopies
+     * @param automaton - the automaton name on the server
+     * @param input     - the input string
+     * @return the response body without its trailing newline
+     * @throws IOException if the request fails or the server reports an
+     *                     error
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public String request(String operation, String automaton, String input)
+            throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(base.resolve(operation + "/" + automaton))
+                .POST(HttpRequest.BodyPublishers.ofString(input)).build();
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        String body = response.body().strip();
+        if (response.statusCode() != 200) {
+            throw new IOException("HTTP " + response.statusCode() + ": " + body);
+        }
+        return body;
+    }
+
+    /**
+     * Sends requests from concurrent callers, cycling through the inputs
+     *
+     * @param operation   - accepts or maxCopies
+     * @param automaton   - the automaton name on the server
+     * @param inputs      - the inputs to send, at least one
+     * @param concurrency - the number of callers
+     * @param requests    - the total number of requests
+     * @return the measured result
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public Result run(String operation, String automaton, List<String> inputs, int concurrency, int requests)
+            throws InterruptedException {
+        long[] latencies = new long[requests];
+        AtomicInteger nextIndex = new AtomicInteger();
+        AtomicLong errors = new AtomicLong();
+        List<Future<?>> callers = new ArrayList<>();
+        long begin = System.nanoTime();
+        for (int c = 0; c < concurrency; c++) {
+            callers.add(executor.submit(() -> {
+                int i;
+                while ((i = nextIndex.getAndIncrement()) < requests) {
+                    long start = System.nanoTime();
+                    try {
+                        request(operation, automaton, inputs.get(i % inputs.size()));
+                    } catch (IOException e) {
+                        errors.incrementAndGet();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    latencies[i] = System.nanoTime() - start;
+                }
+            }));
+        }
+        for (Future<?> caller : callers) {
+            try {
+                caller.get();
+            } catch (java.util.concurrent.ExecutionException e) {
+                errors.incrementAndGet();
+            }
+        }
+        return new Result(latencies, errors.get(), (System.nanoTime() - begin) / 1e9);
+    }
+
+    /**
+     * Releases the client's threads
+     */
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Benchmarks a running server with random inputs
+     *
+     * @param args - the server URL, the automaton name, the input alphabet,
+     *             and optionally the number of requests, the concurrency
+     *             and the longest input
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length < 3) {
+            System.err.println("usage: LoadGenerator <url> <automaton> <alphabet> "
+                    + "[requests] [concurrency] [maxLength]");
+            System.exit(2);
+        }
+        int requests = args.length > 3 ? Integer.parseInt(args[3]) : 100000;
+        int concurrency = args.length > 4 ? Integer.parseInt(args[4]) : 64;
+        int maxLength = args.length > 5 ? Integer.parseInt(args[5]) : 64;
+
+        Random random = new Random(361);
+        List<String> inputs = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            StringBuilder builder = new StringBuilder();
+            int length = random.nextInt(maxLength + 1);
+            for (int j = 0; j < length; j++) {
+                builder.append(args[2].charAt(random.nextInt(args[2].length())));
+            }
+            inputs.add(builder.toString());
+        }
+
+        LoadGenerator generator = new LoadGenerator(URI.create(args[0].endsWith("/") ? args[0] : args[0] + "/"));
+        System.out.println(generator.run("accepts", args[1], inputs, concurrency, requests));
+        generator.close();
+    }
+}
@@ -0,0 +1,310 @@
+package fa.nfa.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Function;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import fa.nfa.CompiledNFA;
+import fa.nfa.DeterministicAutomaton;
+import fa.nfa.Determinizer;
+import fa.nfa.NFA;
+
+/**
+ * A local HTTP server that keeps automata in memory once and answers
+ * match requests for any number of client processes. Compiled automata
+ * files are memory-mapped, so several servers on one machine share the
+ * same pages. Files compiled with their dead states kept, see
+ * {@link CompiledNFA#compile(NFA, boolean)}, answer maxCopies as well.
+ *
+ * Every request is handled on its own virtual thread when the JDK has
+ * them, and on a cached pool of daemon threads otherwise. Concurrent
+ * requests for the same automaton and operation are coalesced into
+ * micro-batches by a {@link MicroBatcher}, split across one batch thread
+ * per processor, and evaluated on the fastest engine available: the
+ * determinized automaton when its size is within bounds, the compiled NFA
+ * otherwise. Both read an 'e' in the input as an epsilon move, so the
+ * answer never depends on which one is used.
+ *
+ * Endpoints, all answering text/plain:
+ * POST /accepts/{name} with the input as body answers true or false,
+ * POST /maxCopies/{name} answers the number of copies,
+ * GET /automata lists the loaded names and GET /stats the counters.
+ * As in NFA.accepts the body "e" is the empty string.
+ *
+ * The JDK HttpServer writes headers and body separately, so without
+ * -Dsun.net.httpserver.nodelay=true every reply waits out the client's
+ * delayed acknowledgement. {@link #main} sets it; embedding applications
+ * should pass it on the command line.
+ */
+public class MatchServer {
+
+    /**
+     * Extension of compiled automata files picked up by {@link #loadAll}.
+     */
+    public static final String EXTENSION = ".nfac";
+
+    private static final int DEFAULT_MAX_BATCH = 256;
+    private static final long DEFAULT_WINDOW_NANOS = 50_000;
+    private static final int MAX_DFA_STATES = 1 << 16;
+
+    private final HttpServer server;
+    private final ExecutorService requestExecutor;
+    private final ExecutorService batchExecutor;
+    private final Map<String, Entry> automata = new ConcurrentHashMap<>();
+    private final MatchStats stats = new MatchStats();
+    private final int maxBatch;
+    private final long windowNanos;
+    private final int parallelism;
+
+    /**
+     * One loaded automaton with its engines and batchers.
+     */
+    private class Entry {
+        final MicroBatcher<Boolean> accepts;
+        // Null when the automaton cannot count copies: compiled files
+        // without their dead states miss states maxCopies has to count.
+        final MicroBatcher<Integer> maxCopies;
+
+        Entry(CompiledNFA compiled, Function<String, Integer> maxCopies) {
+            accepts = new MicroBatcher<>(fastestAccepts(compiled), batchExecutor, stats, maxBatch, windowNanos,
+                    parallelism);
+            this.maxCopies = maxCopies == null ? null
+                    : new MicroBatcher<>(maxCopies, batchExecutor, stats, maxBatch, windowNanos, parallelism);
+        }
+    }
+
+    /**
+     * Picks the determinized automaton when it stays within bounds and the
+     * compiled NFA otherwise.
+     */
+    private static Function<String, Boolean> fastestAccepts(CompiledNFA compiled) {
+        try {
+            DeterministicAutomaton dfa = Determinizer.determinize(compiled, MAX_DFA_STATES);
+            return dfa::accepts;
+        } catch (IllegalStateException e) {
+            return compiled::accepts;
+        }
+    }
+
+    /**
+     * Binds a server to the loopback interface with default batching
+     *
+     * @param port - the port, or 0 for any free port
+     * @throws IOException if the port cannot be bound
+     */
+    public MatchServer(int port) throws IOException {
+        this(port, DEFAULT_MAX_BATCH, DEFAULT_WINDOW_NANOS);
+    }
+
+    /**
+     * Binds a server to the loopback interface
+     *
+     * @param port        - the port, or 0 for any free port
+     * @param maxBatch    - the most inputs evaluated in one batch
+     * @param windowNanos - how long a batch waits to fill while requests
+     *                    arrive together, 0 for no wait
+     * @throws IOException if the port cannot be bound
+     */
+    public MatchServer(int port, int maxBatch, long windowNanos) throws IOException {
+        if (maxBatch < 1) {
+            throw new IllegalArgumentException("maxBatch must be positive");
+        }
+        this.maxBatch = maxBatch;
+        this.windowNanos = windowNanos;
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        requestExecutor = newRequestExecutor();
+        parallelism = Runtime.getRuntime().availableProcessors();
+        batchExecutor = Executors.newFixedThreadPool(parallelism, daemonThreads("match-batch"));
+        server.setExecutor(requestExecutor);
+        server.createContext("/", this::handle);
+    }
+
+    /**
+     * Creates an executor running every task on a new virtual thread,
+     * falling back to a cached pool of daemon threads on JDKs without
+     * virtual threads.
+     *
+     * @return the executor
+     */
+    static ExecutorService newRequestExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(daemonThreads("match-request"));
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        ThreadFactory defaults = Executors.defaultThreadFactory();
+        return runnable -> {
+            Thread thread = defaults.newThread(runnable);
+            thread.setName(prefix + "-" + thread.getName());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Makes an NFA available under name; both operations are supported
+     *
+     * @param name - the automaton name used in request paths
+     * @param nfa  - the automaton; it must not change afterwards
+     */
+    public void register(String name, NFA nfa) {
+        automata.put(name, new Entry(CompiledNFA.compile(nfa), nfa::maxCopies));
+    }
+
+    /**
+     * Maps a compiled automaton file and makes it available under name.
+     * maxCopies is supported if the file was compiled with its dead states.
+     *
+     * @param name - the automaton name used in request paths
+     * @param file - a file written by {@link CompiledNFA#write(Path)}
+     * @throws IOException if the file cannot be mapped
+     */
+    public void load(String name, Path file) throws IOException {
+        CompiledNFA compiled = CompiledNFA.map(file);
+        automata.put(name, new Entry(compiled, compiled.keepsDeadStates() ? compiled::maxCopies : null));
+    }
+
+    /**
+     * Loads every compiled automaton file in a directory, named after the
+     * file without its extension
+     *
+     * @param directory - the directory to scan
+     * @return the number of automata loaded
+     * @throws IOException if the directory or a file cannot be read
+     */
+    public int loadAll(Path directory) throws IOException {
+        int count = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + EXTENSION)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                load(name.substring(0, name.length() - EXTENSION.length()), file);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Starts accepting connections
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops the server, waiting at most a second for running requests
+     */
+    public void stop() {
+        server.stop(1);
+        requestExecutor.shutdown();
+        batchExecutor.shutdown();
+    }
+
+    /**
+     * @return the port the server is bound to
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * @return the live counters
+     */
+    public MatchStats getStats() {
+        return stats;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        int status = 200;
+        String response;
+        try {
+            String[] path = exchange.getRequestURI().getPath().split("/");
+            String method = exchange.getRequestMethod();
+            if (path.length == 2 && path[1].equals("stats") && method.equals("GET")) {
+                response = stats.toString();
+            } else if (path.length == 2 && path[1].equals("automata") && method.equals("GET")) {
+                response = String.join("\n", new TreeMap<>(automata).keySet()) + "\n";
+            } else if (path.length == 3 && method.equals("POST")) {
+                String input = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+                Entry entry = automata.get(path[2]);
+                if (entry == null) {
+                    status = 404;
+                    response = "unknown automaton " + path[2] + "\n";
+                } else if (path[1].equals("accepts")) {
+                    response = entry.accepts.submit(input).get() + "\n";
+                } else if (path[1].equals("maxCopies") && entry.maxCopies != null) {
+                    response = entry.maxCopies.submit(input).get() + "\n";
+                } else if (path[1].equals("maxCopies")) {
+                    status = 400;
+                    response = path[2] + " was compiled without its dead states, which maxCopies needs\n";
+                } else {
+                    status = 404;
+                    response = "unknown operation " + path[1] + "\n";
+                }
+            } else {
+                status = 404;
+                response = "unknown request " + method + " " + exchange.getRequestURI().getPath() + "\n";
+            }
+        } catch (ExecutionException e) {
+            status = 500;
+            response = e.getCause() + "\n";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            status = 503;
+            response = "interrupted\n";
+        }
+
+        // Recorded before replying so a client never sees its answer
+        // before the counters do.
+        stats.recordRequest(System.nanoTime() - start, status != 200);
+        byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Serves every compiled automaton in a directory until killed
+     *
+     * @param args - the port and the directory of {@value #EXTENSION} files
+     * @throws IOException if the port cannot be bound or a file not read
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("usage: MatchServer <port> <directory>");
+            System.exit(2);
+        }
+        // Read once, when the first server is created.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        MatchServer server = new MatchServer(Integer.parseInt(args[0]));
+        int count = server.loadAll(Path.of(args[1]));
+        server.start();
+        System.out.println("Serving " + count + " automata on http://localhost:" + server.getPort() + "/");
+    }
+}
@@ -0,0 +1,138 @@
+package fa.nfa.server;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency and throughput counters of a {@link MatchServer}. Latencies are
+ * kept in a histogram with one bucket per power of two microseconds, so
+ * percentiles are reported as the upper bound of their bucket.
+ */
+public class MatchStats {
+
+    private static final int BUCKETS = 40;
+
+    private final long startNanos = System.nanoTime();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder batchedInputs = new LongAdder();
+    private final LongAdder totalLatencyNanos = new LongAdder();
+    private final LongAccumulator maxLatencyNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder[] histogram = new LongAdder[BUCKETS];
+
+    MatchStats() {
+        for (int i = 0; i < BUCKETS; i++) {
+            histogram[i] = new LongAdder();
+        }
+    }
+
+    void recordRequest(long latencyNanos, boolean error) {
+        requests.increment();
+        if (error) {
+            errors.increment();
+        }
+        totalLatencyNanos.add(latencyNanos);
+        maxLatencyNanos.accumulate(latencyNanos);
+        long micros = Math.max(1, latencyNanos / 1000);
+        int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros - 1));
+        histogram[bucket].increment();
+    }
+
+    void recordBatch(int size) {
+        batches.increment();
+        batchedInputs.add(size);
+    }
+
+    /**
+     * @return the number of requests answered, including errors
+     */
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    /**
+     * @return the number of requests answered with an error status
+     */
+    public long getErrorCount() {
+        return errors.sum();
+    }
+
+    /**
+     * @return the number of micro-batches evaluated
+     */
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    /**
+     * @return the mean number of inputs per micro-batch
+     */
+    public double getAverageBatchSize() {
+        long count = batches.sum();
+        return count == 0 ? 0 : (double) batchedInputs.sum() / count;
+    }
+
+    /**
+     * @return requests per second since the server was created
+     */
+    public double getThroughput() {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        return seconds <= 0 ? 0 : requests.sum() / seconds;
+    }
+
+    /**
+     * @return the mean request latency in microseconds
+     */
+    public double getAverageLatencyMicros() {
+        long count = requests.sum();
+        return count == 0 ? 0 : totalLatencyNanos.sum() / 1000.0 / count;
+    }
+
+    /**
+     * @return the largest request latency in microseconds
+     */
+    public long getMaxLatencyMicros() {
+        return maxLatencyNanos.get() / 1000;
+    }
+
+    /**
+     * Estimates a latency percentile from the histogram
+     *
+     * @param percentile - between 0 and 100
+     * @return an upper bound in microseconds on the given percentile
+     */
+    public long getLatencyPercentileMicros(double percentile) {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = histogram[i].sum();
+            total += counts[i];
+        }
+        long rank = (long) Math.ceil(total * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank && seen > 0) {
+                return 1L << i;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return one "name value" line per counter
+     */
+    @Override
+    public String toString() {
+        return "requests " + getRequestCount() + "\n"
+                + "errors " + getErrorCount() + "\n"
+                + "batches " + getBatchCount() + "\n"
+                + String.format("averageBatchSize %.2f%n", getAverageBatchSize())
+                + String.format("throughput %.1f%n", getThroughput())
+                + String.format("averageLatencyMicros %.1f%n", getAverageLatencyMicros())
+                + "p50LatencyMicros " + getLatencyPercentileMicros(50) + "\n"
+                + "p99LatencyMicros " + getLatencyPercentileMicros(99) + "\n"
+                + "maxLatencyMicros " + getMaxLatencyMicros() + "\n";
+    }
+}
@@ -0,0 +1,161 @@
+package fa.nfa.server;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * Coalesces concurrent requests for one automaton and operation into
+ * micro-batches. The first request to arrive schedules a drain, and
+ * further drains join, up to the given parallelism, while more requests
+ * wait than the running ones share; each takes its part of the queue, so
+ * a hot automaton keeps several worker threads busy. While requests keep
+ * arriving together a drain waits a short window for more unless a full
+ * batch is already queued; a lone request is answered at once. Repeated
+ * inputs in a batch are answered only once.
+ */
+class MicroBatcher<R> {
+
+    // Fewest inputs worth handing to a drain of their own.
+    private static final int MIN_SPLIT = 32;
+
+    private final Function<String, R> evaluator;
+    private final Executor executor;
+    private final MatchStats stats;
+    private final int maxBatch;
+    private final long windowNanos;
+    private final int parallelism;
+
+    private final ConcurrentLinkedQueue<Pending<R>> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger drainers = new AtomicInteger();
+    // Size of the last batch; above 1 while requests arrive together.
+    private volatile int lastBatchSize;
+
+    private static class Pending<R> {
+        final String input;
+        final CompletableFuture<R> result = new CompletableFuture<>();
+
+        Pending(String input) {
+            this.input = input;
+        }
+    }
+
+    /**
+     * @param evaluator   - answers one input
+     * @param executor    - runs the drains
+     * @param stats       - receives the batch sizes
+     * @param maxBatch    - the most inputs evaluated in one batch
+     * @param windowNanos - how long a drain waits for a batch to fill
+     * @param parallelism - the most drains running at once, at least 1
+     */
+    MicroBatcher(Function<String, R> evaluator, Executor executor, MatchStats stats, int maxBatch,
+            long windowNanos, int parallelism) {
+        this.evaluator = evaluator;
+        this.executor = executor;
+        this.stats = stats;
+        this.maxBatch = maxBatch;
+        this.windowNanos = windowNanos;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Queues an input for the next batch
+     *
+     * @param input - the input string
+     * @return the answer, completed once the input's batch has run
+     */
+    CompletableFuture<R> submit(String input) {
+        Pending<R> pending = new Pending<>(input);
+        queue.add(pending);
+        queued.incrementAndGet();
+        startDrains();
+        return pending.result;
+    }
+
+    /**
+     * Starts a drain if none is running, and another one for every
+     * MIN_SPLIT inputs waiting beyond what the running drains share, up to
+     * the parallelism.
+     */
+    private void startDrains() {
+        int running;
+        while ((running = drainers.get()) < parallelism
+                && (running == 0 || queued.get() > running * MIN_SPLIT)) {
+            if (drainers.compareAndSet(running, running + 1)) {
+                executor.execute(this::drain);
+            }
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            int waiting = queued.get();
+            if (windowNanos > 0 && waiting < maxBatch && (waiting > 1 || lastBatchSize > 1)) {
+                LockSupport.parkNanos(windowNanos);
+            }
+            // Take an even share of the queue, so running drains split it.
+            int share = (queued.get() + drainers.get() - 1) / Math.max(drainers.get(), 1);
+            int limit = Math.min(maxBatch, Math.max(MIN_SPLIT, share));
+            List<Pending<R>> batch = new ArrayList<>();
+            Pending<R> pending;
+            while (batch.size() < limit && (pending = queue.poll()) != null) {
+                batch.add(pending);
+            }
+            queued.addAndGet(-batch.size());
+            if (!batch.isEmpty()) {
+                // Let idle workers take what this batch left behind.
+                startDrains();
+                lastBatchSize = batch.size();
+                evaluate(batch);
+            }
+
+            if (!queue.isEmpty()) {
+                continue;
+            }
+            drainers.decrementAndGet();
+            // A request that arrived after the check above may have seen this
+            // drain running and not scheduled one, so pick it up here.
+            if (queue.isEmpty() || !rejoin()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Counts a finishing drain as running again if there is room for it
+     */
+    private boolean rejoin() {
+        int running;
+        while ((running = drainers.get()) < parallelism) {
+            if (drainers.compareAndSet(running, running + 1)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void evaluate(List<Pending<R>> batch) {
+        stats.recordBatch(batch.size());
+        Map<String, R> answers = new HashMap<>();
+        for (Pending<R> pending : batch) {
+            try {
+                R answer = answers.get(pending.input);
+                if (answer == null) {
+                    answer = evaluator.apply(pending.input);
+                    answers.put(pending.input, answer);
+                }
+                pending.result.complete(answer);
+            } catch (RuntimeException e) {
+                pending.result.completeExceptionally(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,346 @@
+package test.nfa;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import fa.nfa.NFA;
+
+/**
+ * Generates large random, adversarial and structured automata for stress
+ * tests. Every automaton is first produced as a plain {@link Spec} that
+ * carries its own straightforward reference simulation, independent of
+ * the code under test, and can then be turned into an {@link NFA}.
+ *
+ * Symbols are taken from "abcd", leaving 'e' as the epsilon label.
+ * Generated inputs still contain 'e' now and then, which NFA.accepts
+ * reads as an epsilon move; the reference does the same, so every engine
+ * is checked on that convention too.
+ */
+public class AutomatonGenerator {
+
+	/**
+	 * Alphabet the generated automata draw their symbols from.
+	 */
+	public static final String SYMBOLS = "abcd";
+
+	/**
+	 * A symbol outside every generated alphabet, used to test rejection.
+	 */
+	public static final char FOREIGN = 'x';
+
+	private static final char EPSILON = 'e';
+
+	/**
+	 * An automaton as an edge list over states 0..n-1, with state 0 as
+	 * the start state.
+	 */
+	public static class Spec {
+		final String name;
+		final int stateCount;
+		final String symbols;
+		final BitSet finals = new BitSet();
+		final List<int[]> edges = new ArrayList<>();
+		// Successors per state and symbol; the epsilon row is last.
+		private int[][] successors;
+
+		Spec(String name, int stateCount, String symbols) {
+			this.name = name;
+			this.stateCount = stateCount;
+			this.symbols = symbols;
+		}
+
+		/**
+		 * Adds an edge; symbol EPSILON marks an epsilon transition.
+		 */
+		void edge(int from, char symbol, int to) {
+			edges.add(new int[] { from, symbol, to });
+			successors = null;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public int getStateCount() {
+			return stateCount;
+		}
+
+		public String getSymbols() {
+			return symbols;
+		}
+
+		/**
+		 * Builds the NFA this spec describes, with states named q0, q1, ...
+		 * @return A new NFA.
+		 */
+		public NFA toNFA() {
+			NFA nfa = new NFA();
+			for (char c : symbols.toCharArray()) {
+				nfa.addSigma(c);
+			}
+			for (int q = 0; q < stateCount; q++) {
+				nfa.addState("q" + q);
+			}
+			nfa.setStart("q0");
+			for (int q = finals.nextSetBit(0); q >= 0; q = finals.nextSetBit(q + 1)) {
+				nfa.setFinal("q" + q);
+			}
+			for (int[] edge : edges) {
+				nfa.addTransition("q" + edge[0], Set.of("q" + edge[2]), (char) edge[1]);
+			}
+			return nfa;
+		}
+
+		/**
+		 * Reference acceptance by explicit set simulation. As in
+		 * NFA.accepts, "e" is the empty string and an 'e' inside an input
+		 * takes one epsilon move.
+		 * @param s - the input string
+		 * @return true if s is accepted
+		 */
+		public boolean accepts(String s) {
+			if ("e".equals(s)) {
+				s = "";
+			}
+			BitSet active = closure(start());
+			for (int i = 0; i < s.length() && !active.isEmpty(); i++) {
+				active = step(active, s.charAt(i));
+			}
+			return active.intersects(finals);
+		}
+
+		/**
+		 * Reference for NFA.maxCopies: the largest active set seen, where
+		 * the run stops early when no state survives a symbol.
+		 * @param s - the input string
+		 * @return the maximum number of simultaneously active states
+		 */
+		public int maxCopies(String s) {
+			BitSet active = closure(start());
+			int max = active.cardinality();
+			for (int i = 0; i < s.length(); i++) {
+				BitSet next = step(active, s.charAt(i));
+				if (next.isEmpty()) {
+					break;
+				}
+				active = next;
+				max = Math.max(max, active.cardinality());
+			}
+			return max;
+		}
+
+		private BitSet start() {
+			BitSet start = new BitSet();
+			start.set(0);
+			return start;
+		}
+
+		private BitSet step(BitSet active, char c) {
+			int row = c == EPSILON ? symbols.length() : symbols.indexOf(c);
+			BitSet next = new BitSet();
+			if (row < 0) {
+				return next;
+			}
+			int[][] table = successors();
+			for (int q = active.nextSetBit(0); q >= 0; q = active.nextSetBit(q + 1)) {
+				for (int to : table[q * (symbols.length() + 1) + row]) {
+					next.set(to);
+				}
+			}
+			return closure(next);
+		}
+
+		private BitSet closure(BitSet states) {
+			int[][] table = successors();
+			int epsilon = symbols.length();
+			BitSet result = (BitSet) states.clone();
+			boolean changed = true;
+			while (changed) {
+				changed = false;
+				for (int q = result.nextSetBit(0); q >= 0; q = result.nextSetBit(q + 1)) {
+					for (int to : table[q * (symbols.length() + 1) + epsilon]) {
+						if (!result.get(to)) {
+							result.set(to);
+							changed = true;
+						}
+					}
+				}
+			}
+			return result;
+		}
+
+		private int[][] successors() {
+			if (successors == null) {
+				int width = symbols.length() + 1;
+				List<List<Integer>> rows = new ArrayList<>();
+				for (int i = 0; i < stateCount * width; i++) {
+					rows.add(new ArrayList<>());
+				}
+				for (int[] edge : edges) {
+					int row = edge[1] == EPSILON ? symbols.length() : symbols.indexOf(edge[1]);
+					rows.get(edge[0] * width + row).add(edge[2]);
+				}
+				int[][] table = new int[rows.size()][];
+				for (int i = 0; i < table.length; i++) {
+					table[i] = rows.get(i).stream().mapToInt(Integer::intValue).toArray();
+				}
+				successors = table;
+			}
+			return successors;
+		}
+
+		@Override
+		public String toString() {
+			return name + " (" + stateCount + " states, " + edges.size() + " edges)";
+		}
+	}
+
+	/**
+	 * A random automaton where every state has about density successors
+	 * per symbol and epsilonDensity epsilon successors.
+	 * @param n - the number of states
+	 * @param alphabet - how many symbols of SYMBOLS to use
+	 * @param density - expected successors per state and symbol
+	 * @param epsilonDensity - expected epsilon successors per state
+	 * @param finalRate - probability that a state is final
+	 * @param random - the source of randomness
+	 * @return A random automaton.
+	 */
+	public static Spec random(int n, int alphabet, double density, double epsilonDensity, double finalRate,
+			Random random) {
+		return random("random(" + n + ")", n, alphabet, density, epsilonDensity, finalRate, random);
+	}
+
+	private static Spec random(String name, int n, int alphabet, double density, double epsilonDensity,
+			double finalRate, Random random) {
+		Spec spec = new Spec(name, n, SYMBOLS.substring(0, alphabet));
+		for (int q = 0; q < n; q++) {
+			if (random.nextDouble() < finalRate) {
+				spec.finals.set(q);
+			}
+			for (char c : spec.symbols.toCharArray()) {
+				addEdges(spec, q, c, density, random);
+			}
+			addEdges(spec, q, EPSILON, epsilonDensity, random);
+		}
+		return spec;
+	}
+
+	/**
+	 * Dense nondeterminism: every state moves to about half of all states
+	 * on every symbol, so active sets stay large.
+	 * @param n - the number of states
+	 * @param random - the source of randomness
+	 * @return A dense automaton.
+	 */
+	public static Spec dense(int n, Random random) {
+		return random("dense(" + n + ")", n, 2, n / 2.0, 0, 0.1, random);
+	}
+
+	/**
+	 * A chain of n states linked only by epsilon transitions, with a
+	 * symbol loop on the first state and the last state final. Every step
+	 * has to walk the whole chain.
+	 * @param n - the number of states
+	 * @return An epsilon chain.
+	 */
+	public static Spec epsilonChain(int n) {
+		Spec spec = new Spec("epsilonChain(" + n + ")", n, "ab");
+		spec.edge(0, 'a', 0);
+		for (int q = 0; q + 1 < n; q++) {
+			spec.edge(q, EPSILON, q + 1);
+		}
+		spec.edge(n - 1, 'b', 0);
+		spec.finals.set(n - 1);
+		return spec;
+	}
+
+	/**
+	 * A ring of n states linked by epsilon transitions, with a symbol edge
+	 * leaving every third state, so a naive closure would never terminate.
+	 * @param n - the number of states
+	 * @return An epsilon cycle.
+	 */
+	public static Spec epsilonCycle(int n) {
+		Spec spec = new Spec("epsilonCycle(" + n + ")", n + 1, "ab");
+		for (int q = 0; q < n; q++) {
+			spec.edge(q, EPSILON, (q + 1) % n);
+			if (q % 3 == 0) {
+				spec.edge(q, 'a', (q + 2) % n);
+			}
+		}
+		spec.edge(n / 2, 'b', n);
+		spec.finals.set(n);
+		return spec;
+	}
+
+	/**
+	 * The classic subset-construction blow-up (a|b)*a(a|b)^k, whose
+	 * smallest DFA has 2^(k+1) states.
+	 * @param k - the distance of the marked symbol from the end
+	 * @return The kth-from-end automaton.
+	 */
+	public static Spec kthFromEnd(int k) {
+		Spec spec = new Spec("kthFromEnd(" + k + ")", k + 2, "ab");
+		spec.edge(0, 'a', 0);
+		spec.edge(0, 'b', 0);
+		spec.edge(0, 'a', 1);
+		for (int q = 1; q <= k; q++) {
+			spec.edge(q, 'a', q + 1);
+			spec.edge(q, 'b', q + 1);
+		}
+		spec.finals.set(k + 1);
+		return spec;
+	}
+
+	/**
+	 * A random input over the spec's symbols, occasionally containing an
+	 * 'e' or a foreign symbol, and now and then exactly "e".
+	 * @param spec - the automaton the input is meant for
+	 * @param maxLength - the longest input produced
+	 * @param random - the source of randomness
+	 * @return A random input string.
+	 */
+	public static String input(Spec spec, int maxLength, Random random) {
+		if (random.nextInt(100) == 0) {
+			return "e";
+		}
+		int length = random.nextInt(maxLength + 1);
+		StringBuilder builder = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			int pick = random.nextInt(200);
+			if (pick == 0) {
+				builder.append(FOREIGN);
+			} else if (pick < 5) {
+				builder.append(EPSILON);
+			} else {
+				builder.append(spec.symbols.charAt(random.nextInt(spec.symbols.length())));
+			}
+		}
+		return builder.toString();
+	}
+
+	private static void addEdges(Spec spec, int from, char symbol, double expected, Random random) {
+		int n = spec.stateCount;
+		if (expected >= n / 4.0) {
+			// Too many edges to draw one by one; flip a coin per target.
+			double p = expected / n;
+			for (int to = 0; to < n; to++) {
+				if (random.nextDouble() < p) {
+					spec.edge(from, symbol, to);
+				}
+			}
+			return;
+		}
+		int count = (int) expected;
+		if (random.nextDouble() < expected - count) {
+			count++;
+		}
+		for (int i = 0; i < count; i++) {
+			spec.edge(from, symbol, random.nextInt(n));
+		}
+	}
+}
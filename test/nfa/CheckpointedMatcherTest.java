@@ -0,0 +1,79 @@
+package test.nfa;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import fa.nfa.CheckpointedMatcher;
+import fa.nfa.NFA;
+
+/**
+ * Unit tests for incremental re-validation with checkpoints.
+ */
+public class CheckpointedMatcherTest {
+
+	/**
+	 * Builds an NFA for strings over {0, 1} with a 1 in the third position
+	 * from the end, which forgets everything older than three symbols.
+	 * @return A sample NFA.
+	 */
+	private NFA nfa() {
+		NFA nfa = new NFA();
+		nfa.addSigma('0');
+		nfa.addSigma('1');
+		for (String name : new String[] { "a", "b", "c", "d" }) {
+			assertTrue(nfa.addState(name));
+		}
+		assertTrue(nfa.setStart("a"));
+		assertTrue(nfa.setFinal("d"));
+		assertTrue(nfa.addTransition("a", Set.of("a"), '0'));
+		assertTrue(nfa.addTransition("a", Set.of("a", "b"), '1'));
+		assertTrue(nfa.addTransition("b", Set.of("c"), '0'));
+		assertTrue(nfa.addTransition("b", Set.of("c"), '1'));
+		assertTrue(nfa.addTransition("c", Set.of("d"), '0'));
+		assertTrue(nfa.addTransition("c", Set.of("d"), '1'));
+		return nfa;
+	}
+
+	private String randomText(Random random, int length, String symbols) {
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < length; i++) {
+			builder.append(symbols.charAt(random.nextInt(symbols.length())));
+		}
+		return builder.toString();
+	}
+
+	@Test
+	public void testRandomEdits() {
+		NFA nfa = nfa();
+		CheckpointedMatcher matcher = new CheckpointedMatcher(nfa, 5);
+		Random random = new Random(7);
+		assertEquals(nfa.accepts("0111011"), matcher.reset("0111011"));
+		for (int i = 0; i < 500; i++) {
+			String text = matcher.getText();
+			int position = random.nextInt(text.length() + 1);
+			int removed = random.nextInt(Math.min(4, text.length() - position) + 1);
+			// An occasional 2 kills the run, which later edits must revive.
+			String inserted = randomText(random, random.nextInt(4), i % 50 == 0 ? "012" : "01");
+			boolean result = matcher.edit(position, removed, inserted);
+			assertEquals(matcher.getText(), nfa.accepts(matcher.getText()), result);
+		}
+	}
+
+	@Test
+	public void testWorkIsLocal() {
+		NFA nfa = nfa();
+		CheckpointedMatcher matcher = new CheckpointedMatcher(nfa, 64);
+		String text = randomText(new Random(11), 100000, "01");
+		matcher.reset(text);
+		assertEquals(100000, matcher.getLastWork());
+
+		boolean result = matcher.edit(50000, 1, "10");
+		assertEquals(nfa.accepts(matcher.getText()), result);
+		assertTrue(matcher.getLastWork() < 200);
+	}
+
+}
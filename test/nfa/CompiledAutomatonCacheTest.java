@@ -0,0 +1,161 @@
+package test.nfa;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import fa.nfa.CompiledAutomatonCache;
+import fa.nfa.CompiledNFA;
+import fa.nfa.NFA;
+
+/**
+ * Unit tests for the compiled automaton cache: structural keys, hit and
+ * miss accounting, and eviction by count and by weight.
+ */
+public class CompiledAutomatonCacheTest {
+
+	/**
+	 * Builds an NFA for strings ending in the given symbol, adding states
+	 * and symbols in the given order.
+	 * @return A small sample NFA.
+	 */
+	private NFA nfa(char last, boolean reversed) {
+		NFA nfa = new NFA();
+		if (reversed) {
+			nfa.addSigma('1');
+			nfa.addSigma('0');
+			assertTrue(nfa.addState("b"));
+			assertTrue(nfa.addState("a"));
+		} else {
+			nfa.addSigma('0');
+			nfa.addSigma('1');
+			assertTrue(nfa.addState("a"));
+			assertTrue(nfa.addState("b"));
+		}
+		assertTrue(nfa.setStart("a"));
+		assertTrue(nfa.setFinal("b"));
+		assertTrue(nfa.addTransition("a", Set.of("a"), '0'));
+		assertTrue(nfa.addTransition("a", Set.of("a"), '1'));
+		assertTrue(nfa.addTransition("a", Set.of("b"), last));
+		return nfa;
+	}
+
+	@Test
+	public void testStructuralKey() {
+		String key = CompiledAutomatonCache.structuralKey(nfa('1', false));
+		assertEquals(key, CompiledAutomatonCache.structuralKey(nfa('1', true)));
+		assertNotEquals(key, CompiledAutomatonCache.structuralKey(nfa('0', false)));
+
+		NFA changed = nfa('1', false);
+		assertTrue(changed.addTransition("b", Set.of("a"), '0'));
+		assertNotEquals(key, CompiledAutomatonCache.structuralKey(changed));
+	}
+
+	@Test
+	public void testHitsAndMisses() {
+		CompiledAutomatonCache<CompiledNFA> cache = CompiledAutomatonCache.forCompiledNFA(4, 1 << 20);
+		CompiledNFA first = cache.get(nfa('1', false));
+		assertSame(first, cache.get(nfa('1', true)));
+		assertNotSame(first, cache.get(nfa('0', false)));
+		assertEquals(1, cache.getHitCount());
+		assertEquals(2, cache.getMissCount());
+		assertEquals(2, cache.size());
+		assertTrue(first.accepts("0101"));
+	}
+
+	@Test
+	public void testEviction() {
+		CompiledAutomatonCache<String> byCount = new CompiledAutomatonCache<>(nfa -> "x", s -> 1, 1, 100);
+		byCount.get(nfa('1', false));
+		byCount.get(nfa('0', false));
+		assertEquals(1, byCount.size());
+		assertEquals(1, byCount.getEvictionCount());
+
+		CompiledAutomatonCache<String> byWeight = new CompiledAutomatonCache<>(nfa -> "x", s -> 6, 10, 10);
+		byWeight.get(nfa('1', false));
+		byWeight.get(nfa('0', false));
+		assertEquals(1, byWeight.size());
+		assertEquals(6, byWeight.getWeight());
+	}
+
+	/**
+	 * Calls cache.get from threads that all start at the same moment and
+	 * returns each caller's outcome.
+	 */
+	private List<Future<CompiledNFA>> getConcurrently(CompiledAutomatonCache<CompiledNFA> cache, int callers)
+			throws InterruptedException {
+		ExecutorService executor = Executors.newFixedThreadPool(callers);
+		CountDownLatch ready = new CountDownLatch(callers);
+		CountDownLatch go = new CountDownLatch(1);
+		List<Future<CompiledNFA>> results = new ArrayList<>();
+		for (int i = 0; i < callers; i++) {
+			results.add(executor.submit(() -> {
+				ready.countDown();
+				go.await();
+				return cache.get(nfa('1', false));
+			}));
+		}
+		ready.await();
+		go.countDown();
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+		return results;
+	}
+
+	@Test
+	public void testCompiledOnce() throws Exception {
+		AtomicInteger compilations = new AtomicInteger();
+		CompiledAutomatonCache<CompiledNFA> cache = new CompiledAutomatonCache<>(nfa -> {
+			compilations.incrementAndGet();
+			// Slow enough that every caller misses while it runs.
+			sleep(200);
+			return CompiledNFA.compile(nfa);
+		}, CompiledNFA::getSizeInBytes, 4, 1 << 20);
+
+		for (Future<CompiledNFA> result : getConcurrently(cache, 8)) {
+			assertTrue(result.get().accepts("1"));
+		}
+		assertEquals(1, compilations.get());
+		assertEquals(8, cache.getMissCount());
+		assertEquals(0, cache.getHitCount());
+	}
+
+	@Test
+	public void testFailureSeenByAll() throws Exception {
+		CompiledAutomatonCache<CompiledNFA> cache = new CompiledAutomatonCache<>(nfa -> {
+			sleep(200);
+			throw new IllegalArgumentException("broken");
+		}, CompiledNFA::getSizeInBytes, 4, 1 << 20);
+
+		for (Future<CompiledNFA> result : getConcurrently(cache, 8)) {
+			try {
+				result.get();
+				fail("compilation failure was swallowed");
+			} catch (ExecutionException e) {
+				assertEquals(IllegalArgumentException.class, e.getCause().getClass());
+				assertEquals("broken", e.getCause().getMessage());
+			}
+		}
+		assertEquals(0, cache.size());
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
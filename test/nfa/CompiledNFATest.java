@@ -0,0 +1,163 @@
+package test.nfa;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import fa.nfa.CompiledNFA;
+import fa.nfa.NFA;
+
+/**
+ * Unit tests for the off-heap compiled form. Every answer must match
+ * NFA.accepts on the automaton it was compiled from.
+ */
+public class CompiledNFATest {
+
+	/**
+	 * Builds an NFA over {0, 1, #} mixing epsilon chains, a dead state
+	 * and an accepting sink.
+	 * @return A sample NFA.
+	 */
+	private NFA nfa() {
+		NFA nfa = new NFA();
+		nfa.addSigma('#');
+		nfa.addSigma('0');
+		nfa.addSigma('1');
+
+		assertTrue(nfa.addState("W"));
+		assertTrue(nfa.setStart("W"));
+		assertTrue(nfa.addState("L"));
+		assertTrue(nfa.addState("I"));
+		assertTrue(nfa.addState("N"));
+		assertTrue(nfa.addState("D"));
+		assertTrue(nfa.addState("S"));
+		assertTrue(nfa.setFinal("N"));
+		assertTrue(nfa.setFinal("S"));
+
+		assertTrue(nfa.addTransition("W", Set.of("N"), '#'));
+		assertTrue(nfa.addTransition("W", Set.of("L"), 'e'));
+		assertTrue(nfa.addTransition("L", Set.of("L", "N"), '0'));
+		assertTrue(nfa.addTransition("L", Set.of("I"), 'e'));
+		assertTrue(nfa.addTransition("I", Set.of("I", "N", "D"), '1'));
+		assertTrue(nfa.addTransition("N", Set.of("W"), '#'));
+		assertTrue(nfa.addTransition("N", Set.of("S"), '1'));
+		assertTrue(nfa.addTransition("D", Set.of("D"), '0'));
+		assertTrue(nfa.addTransition("S", Set.of("S"), '0'));
+		assertTrue(nfa.addTransition("S", Set.of("S"), '1'));
+		assertTrue(nfa.addTransition("S", Set.of("S"), '#'));
+
+		return nfa;
+	}
+
+	/**
+	 * Lists every string over the given symbols up to the given length.
+	 */
+	private List<String> inputs(String symbols, int maxLength) {
+		List<String> result = new ArrayList<>();
+		result.add("");
+		for (int i = 0; i < result.size(); i++) {
+			String s = result.get(i);
+			if (s.length() < maxLength) {
+				for (char c : symbols.toCharArray()) {
+					result.add(s + c);
+				}
+			}
+		}
+		return result;
+	}
+
+	@Test
+	public void testMatchesNFA() {
+		NFA nfa = nfa();
+		CompiledNFA compiled = CompiledNFA.compile(nfa);
+		for (String s : inputs("#01e2", 5)) {
+			assertEquals(s, nfa.accepts(s), compiled.accepts(s));
+		}
+		assertEquals(nfa.accepts("e"), compiled.accepts("e"));
+	}
+
+	@Test
+	public void testDeadStatesDropped() {
+		CompiledNFA compiled = CompiledNFA.compile(nfa());
+		// D can never accept, so reading 1 from I only reaches N and I.
+		int[] active = compiled.next(compiled.start(), '1');
+		assertEquals(2, active.length);
+		assertTrue(compiled.isAccepting(active));
+		assertFalse(compiled.isAcceptAll(active));
+		assertTrue(compiled.isAcceptAll(compiled.next(active, '1')));
+		assertEquals(0, compiled.next(active, '2').length);
+	}
+
+	@Test
+	public void testDeadStatesKept() throws IOException {
+		NFA nfa = nfa();
+		Path file = Files.createTempFile("nfa", ".bin");
+		try {
+			CompiledNFA.compile(nfa, true).write(file);
+			CompiledNFA full = CompiledNFA.map(file);
+			assertTrue(full.keepsDeadStates());
+			assertFalse(CompiledNFA.compile(nfa).keepsDeadStates());
+			for (String s : inputs("#01e2", 5)) {
+				assertEquals(s, nfa.accepts(s), full.accepts(s));
+				assertEquals(s, nfa.maxCopies(s), full.maxCopies(s));
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testMaxCopiesNeedsDeadStates() {
+		CompiledNFA.compile(nfa()).maxCopies("1");
+	}
+
+	@Test
+	public void testMappedFile() throws IOException {
+		NFA nfa = nfa();
+		Path file = Files.createTempFile("nfa", ".bin");
+		try {
+			CompiledNFA.compile(nfa).write(file);
+			CompiledNFA mapped = CompiledNFA.map(file);
+			assertEquals(6, mapped.getStateCount());
+			for (String s : inputs("#01", 6)) {
+				assertEquals(s, nfa.accepts(s), mapped.accepts(s));
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testNotCompiled() throws IOException {
+		Path file = Files.createTempFile("nfa", ".bin");
+		try {
+			Files.write(file, new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+			CompiledNFA.map(file);
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testOtherVersion() throws IOException {
+		Path file = Files.createTempFile("nfa", ".bin");
+		try {
+			CompiledNFA.compile(nfa()).write(file);
+			byte[] bytes = Files.readAllBytes(file);
+			// The little-endian version word follows the magic.
+			bytes[4] = 1;
+			Files.write(file, bytes);
+			CompiledNFA.map(file);
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+}
@@ -0,0 +1,93 @@
+package test.nfa;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import fa.nfa.CompiledNFA;
+import fa.nfa.DeterministicAutomaton;
+import fa.nfa.Determinizer;
+import fa.nfa.NFA;
+
+/**
+ * Unit tests for the sequential and parallel subset constructions.
+ */
+public class DeterminizerTest {
+
+	/**
+	 * Builds an NFA for (0|1)*1(0|1)^k, whose DFA needs 2^(k+1) states.
+	 * @return A sample NFA with exponential blow-up.
+	 */
+	private NFA kthFromEnd(int k) {
+		NFA nfa = new NFA();
+		nfa.addSigma('0');
+		nfa.addSigma('1');
+		for (int i = 0; i <= k + 1; i++) {
+			assertTrue(nfa.addState("q" + i));
+		}
+		assertTrue(nfa.setStart("q0"));
+		assertTrue(nfa.setFinal("q" + (k + 1)));
+		assertTrue(nfa.addTransition("q0", Set.of("q0"), '0'));
+		assertTrue(nfa.addTransition("q0", Set.of("q0", "q1"), '1'));
+		for (int i = 1; i <= k; i++) {
+			assertTrue(nfa.addTransition("q" + i, Set.of("q" + (i + 1)), '0'));
+			assertTrue(nfa.addTransition("q" + i, Set.of("q" + (i + 1)), '1'));
+		}
+		return nfa;
+	}
+
+	@Test
+	public void testStateCount() {
+		DeterministicAutomaton dfa = Determinizer.determinize(kthFromEnd(6));
+		assertEquals(128, dfa.getStateCount());
+		assertTrue(dfa.accepts("1000000"));
+		assertFalse(dfa.accepts("0100000"));
+	}
+
+	@Test
+	public void testParallelIsIdentical() {
+		NFA nfa = kthFromEnd(9);
+		DeterministicAutomaton sequential = Determinizer.determinize(nfa);
+		for (int threads = 1; threads <= 4; threads++) {
+			DeterministicAutomaton parallel = Determinizer.determinizeParallel(nfa, threads);
+			assertEquals(sequential.getStateCount(), parallel.getStateCount());
+			for (int q = 0; q < sequential.getStateCount(); q++) {
+				assertEquals(sequential.isAccepting(q), parallel.isAccepting(q));
+				assertEquals(sequential.next(q, '0'), parallel.next(q, '0'));
+				assertEquals(sequential.next(q, '1'), parallel.next(q, '1'));
+			}
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testStateLimit() {
+		Determinizer.determinizeParallel(CompiledNFA.compile(kthFromEnd(9)), 100, 2);
+	}
+
+	@Test
+	public void testEpsilonInInput() {
+		// p -e-> q (final), p -0-> p: reading 'e' takes the epsilon move.
+		NFA nfa = new NFA();
+		nfa.addSigma('0');
+		assertTrue(nfa.addState("p"));
+		assertTrue(nfa.addState("q"));
+		assertTrue(nfa.setStart("p"));
+		assertTrue(nfa.setFinal("q"));
+		assertTrue(nfa.addTransition("p", Set.of("q"), 'e'));
+		assertTrue(nfa.addTransition("p", Set.of("p"), '0'));
+
+		DeterministicAutomaton sequential = Determinizer.determinize(nfa);
+		DeterministicAutomaton parallel = Determinizer.determinizeParallel(nfa, 2);
+		for (String input : new String[] { "e", "", "0", "0e", "e0", "ee", "00e" }) {
+			assertEquals(input, nfa.accepts(input), sequential.accepts(input));
+			assertEquals(input, nfa.accepts(input), parallel.accepts(input));
+		}
+		// 'e' is not a symbol of the language, so it is never counted.
+		assertEquals(1, sequential.countAccepted(2).intValue());
+		assertEquals("00", sequential.sampleAccepted(2, new Random(1)));
+	}
+
+}
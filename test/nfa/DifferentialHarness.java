@@ -0,0 +1,235 @@
+package test.nfa;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Function;
+
+import fa.nfa.CheckpointedMatcher;
+import fa.nfa.CompiledNFA;
+import fa.nfa.DeterministicAutomaton;
+import fa.nfa.Determinizer;
+import fa.nfa.MemoizingAcceptor;
+import fa.nfa.NFA;
+import fa.nfa.NFAOptimizer;
+import fa.nfa.PikeVM;
+
+/**
+ * Runs every matching engine on the same generated inputs and compares
+ * each answer with the reference simulation of
+ * {@link AutomatonGenerator.Spec}. Reports every mismatch and the
+ * throughput of each engine.
+ *
+ * Run main for a full stress run, e.g. with 1000000 inputs per automaton:
+ * java -cp ... test.nfa.DifferentialHarness 1000000
+ */
+public class DifferentialHarness {
+
+	// Determinization is skipped for automata whose DFA would be larger.
+	private static final int MAX_DFA_STATES = 1 << 16;
+
+	// Only the first few mismatches are kept in full.
+	private static final int MAX_REPORTED = 20;
+
+	/**
+	 * The outcome of one automaton.
+	 */
+	public static class Report {
+		final String automaton;
+		final int inputs;
+		final Map<String, Long> nanos = new LinkedHashMap<>();
+		final List<String> skipped = new ArrayList<>();
+		final List<String> mismatches = new ArrayList<>();
+		long mismatchCount;
+
+		Report(String automaton, int inputs) {
+			this.automaton = automaton;
+			this.inputs = inputs;
+		}
+
+		public long getMismatchCount() {
+			return mismatchCount;
+		}
+
+		public List<String> getMismatches() {
+			return mismatches;
+		}
+
+		/**
+		 * @return the engines that were compared, in order
+		 */
+		public List<String> getEngines() {
+			return new ArrayList<>(nanos.keySet());
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder builder = new StringBuilder(automaton + ": " + inputs + " inputs, " + mismatchCount
+					+ " mismatches\n");
+			for (Map.Entry<String, Long> entry : nanos.entrySet()) {
+				double seconds = Math.max(entry.getValue(), 1) / 1e9;
+				builder.append(String.format("  %-24s %12.0f inputs/s%n", entry.getKey(), inputs / seconds));
+			}
+			for (String name : skipped) {
+				builder.append("  " + name + " skipped\n");
+			}
+			for (String mismatch : mismatches) {
+				builder.append("  MISMATCH " + mismatch + "\n");
+			}
+			return builder.toString();
+		}
+	}
+
+	/**
+	 * One engine under test, answering either acceptance or copy counts.
+	 */
+	private static class Engine {
+		final String name;
+		final Function<String, Object> run;
+		final boolean copies;
+
+		Engine(String name, Function<String, Object> run, boolean copies) {
+			this.name = name;
+			this.run = run;
+			this.copies = copies;
+		}
+	}
+
+	/**
+	 * Compares every engine with the reference on random inputs
+	 * @param spec - the automaton
+	 * @param inputs - how many inputs to generate
+	 * @param maxLength - the longest input
+	 * @param seed - the seed for the inputs
+	 * @return the report
+	 */
+	public static Report run(AutomatonGenerator.Spec spec, int inputs, int maxLength, long seed) {
+		Random random = new Random(seed);
+		String[] strings = new String[inputs];
+		for (int i = 0; i < inputs; i++) {
+			strings[i] = AutomatonGenerator.input(spec, maxLength, random);
+		}
+
+		Report report = new Report(spec.toString(), inputs);
+		boolean[] accepted = new boolean[inputs];
+		int[] copies = new int[inputs];
+		long begin = System.nanoTime();
+		for (int i = 0; i < inputs; i++) {
+			accepted[i] = spec.accepts(strings[i]);
+			copies[i] = spec.maxCopies(strings[i]);
+		}
+		report.nanos.put("reference", System.nanoTime() - begin);
+
+		for (Engine engine : engines(spec, report)) {
+			begin = System.nanoTime();
+			Object[] results = new Object[inputs];
+			for (int i = 0; i < inputs; i++) {
+				results[i] = engine.run.apply(strings[i]);
+			}
+			report.nanos.put(engine.name, System.nanoTime() - begin);
+
+			for (int i = 0; i < inputs; i++) {
+				Object expected = engine.copies ? (Object) copies[i] : (Object) accepted[i];
+				if (!expected.equals(results[i])) {
+					report.mismatchCount++;
+					if (report.mismatches.size() < MAX_REPORTED) {
+						report.mismatches.add(engine.name + " on \"" + strings[i] + "\": expected " + expected
+								+ ", got " + results[i]);
+					}
+				}
+			}
+		}
+		return report;
+	}
+
+	/**
+	 * The standard mix of generated automata
+	 * @param scale - multiplies the sizes, at least 1
+	 * @param random - the source of randomness
+	 * @return the automata to test
+	 */
+	public static List<AutomatonGenerator.Spec> suite(int scale, Random random) {
+		List<AutomatonGenerator.Spec> suite = new ArrayList<>();
+		suite.add(AutomatonGenerator.random(20 * scale, 2, 1.2, 0.2, 0.2, random));
+		suite.add(AutomatonGenerator.random(100 * scale, 4, 1.5, 0.3, 0.05, random));
+		suite.add(AutomatonGenerator.epsilonChain(50 * scale));
+		suite.add(AutomatonGenerator.epsilonCycle(50 * scale));
+		suite.add(AutomatonGenerator.kthFromEnd(4 + 2 * scale));
+		suite.add(AutomatonGenerator.dense(16 * scale, random));
+		return suite;
+	}
+
+	private static List<Engine> engines(AutomatonGenerator.Spec spec, Report report) {
+		NFA nfa = spec.toNFA();
+		CompiledNFA compiled = CompiledNFA.compile(nfa);
+		CompiledNFA full = CompiledNFA.compile(nfa, true);
+		NFA optimized = new NFAOptimizer().optimize(spec.toNFA());
+		MemoizingAcceptor memo = MemoizingAcceptor.withPrefixCache(nfa, 1 << 22, 256, 8);
+		PikeVM pike = new PikeVM(nfa);
+		CheckpointedMatcher matcher = new CheckpointedMatcher(compiled, 8);
+
+		List<Engine> engines = new ArrayList<>();
+		engines.add(new Engine("NFA.accepts", nfa::accepts, false));
+		engines.add(new Engine("NFA.maxCopies", nfa::maxCopies, true));
+		engines.add(new Engine("NFAOptimizer", optimized::accepts, false));
+		engines.add(new Engine("CompiledNFA", compiled::accepts, false));
+		engines.add(new Engine("CompiledNFA.maxCopies", full::maxCopies, true));
+		try {
+			DeterministicAutomaton dfa = Determinizer.determinize(compiled, MAX_DFA_STATES);
+			DeterministicAutomaton parallel = Determinizer.determinizeParallel(compiled, MAX_DFA_STATES, 4);
+			engines.add(new Engine("Determinizer", dfa::accepts, false));
+			engines.add(new Engine("Determinizer.parallel", parallel::accepts, false));
+		} catch (IllegalStateException e) {
+			report.skipped.add("Determinizer");
+		}
+		engines.add(new Engine("MemoizingAcceptor", memo::accepts, false));
+		engines.add(new Engine("PikeVM", s -> pike.match(s) != null, false));
+		engines.add(new Engine("CheckpointedMatcher", s -> editTo(matcher, s), false));
+		return engines;
+	}
+
+	/**
+	 * Turns the matcher's buffer into s with a single edit covering the
+	 * part that differs, so consecutive inputs exercise the incremental
+	 * path.
+	 */
+	private static boolean editTo(CheckpointedMatcher matcher, String s) {
+		String old = matcher.getText();
+		int prefix = 0;
+		int limit = Math.min(old.length(), s.length());
+		while (prefix < limit && old.charAt(prefix) == s.charAt(prefix)) {
+			prefix++;
+		}
+		int suffix = 0;
+		while (suffix < limit - prefix
+				&& old.charAt(old.length() - 1 - suffix) == s.charAt(s.length() - 1 - suffix)) {
+			suffix++;
+		}
+		return matcher.edit(prefix, old.length() - prefix - suffix,
+				s.substring(prefix, s.length() - suffix));
+	}
+
+	/**
+	 * Runs the suite and prints one report per automaton
+	 * @param args - optional inputs per automaton, scale and seed
+	 */
+	public static void main(String[] args) {
+		int inputs = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		int scale = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+		long seed = args.length > 2 ? Long.parseLong(args[2]) : 361;
+
+		Random random = new Random(seed);
+		long mismatches = 0;
+		for (AutomatonGenerator.Spec spec : suite(scale, random)) {
+			Report report = run(spec, inputs, 64, random.nextLong());
+			System.out.print(report);
+			mismatches += report.getMismatchCount();
+		}
+		System.out.println(mismatches + " mismatches in total");
+		if (mismatches > 0) {
+			System.exit(1);
+		}
+	}
+}
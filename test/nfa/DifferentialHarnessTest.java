@@ -0,0 +1,37 @@
+package test.nfa;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Runs a small instance of the differential stress harness so every
+ * engine is cross-checked against the reference on each build.
+ */
+public class DifferentialHarnessTest {
+
+	@Test
+	public void testSuiteAgreesWithReference() {
+		Random random = new Random(361);
+		for (AutomatonGenerator.Spec spec : DifferentialHarness.suite(1, random)) {
+			DifferentialHarness.Report report = DifferentialHarness.run(spec, 2000, 24, random.nextLong());
+			assertEquals(report.toString(), 0, report.getMismatchCount());
+		}
+		System.out.println("Differential harness done");
+	}
+
+	@Test
+	public void testReferenceOnKnownAutomaton() {
+		AutomatonGenerator.Spec spec = AutomatonGenerator.kthFromEnd(2);
+		assertTrue(spec.accepts("abb"));
+		assertTrue(spec.accepts("bbaab"));
+		assertFalse(spec.accepts("bab"));
+		assertFalse(spec.accepts("axb"));
+		assertEquals(4, spec.maxCopies("aaa"));
+		assertEquals(2, spec.maxCopies("ax"));
+		System.out.println("Reference done");
+	}
+
+}
@@ -0,0 +1,173 @@
+package test.nfa;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import fa.nfa.CompiledNFA;
+import fa.nfa.NFA;
+import fa.nfa.server.LoadGenerator;
+import fa.nfa.server.MatchServer;
+
+/**
+ * Tests the batching match server through its HTTP interface.
+ */
+public class MatchServerTest {
+
+	private MatchServer server;
+	private LoadGenerator client;
+
+	/**
+	 * Builds an NFA for strings over {0, 1} with a 1 in the third position
+	 * from the end.
+	 * @return A sample NFA.
+	 */
+	private NFA nfa() {
+		NFA nfa = new NFA();
+		nfa.addSigma('0');
+		nfa.addSigma('1');
+		for (String name : new String[] { "a", "b", "c", "d" }) {
+			assertTrue(nfa.addState(name));
+		}
+		assertTrue(nfa.setStart("a"));
+		assertTrue(nfa.setFinal("d"));
+		assertTrue(nfa.addTransition("a", Set.of("a"), '0'));
+		assertTrue(nfa.addTransition("a", Set.of("a", "b"), '1'));
+		assertTrue(nfa.addTransition("b", Set.of("c"), '0'));
+		assertTrue(nfa.addTransition("b", Set.of("c"), '1'));
+		assertTrue(nfa.addTransition("c", Set.of("d"), '0'));
+		assertTrue(nfa.addTransition("c", Set.of("d"), '1'));
+		return nfa;
+	}
+
+	/**
+	 * Builds an NFA p -e-> q (final), p -0-> p, where an 'e' in the input
+	 * takes the epsilon move.
+	 * @return A sample NFA with an epsilon transition.
+	 */
+	private NFA epsilonNFA() {
+		NFA nfa = new NFA();
+		nfa.addSigma('0');
+		assertTrue(nfa.addState("p"));
+		assertTrue(nfa.addState("q"));
+		assertTrue(nfa.setStart("p"));
+		assertTrue(nfa.setFinal("q"));
+		assertTrue(nfa.addTransition("p", Set.of("q"), 'e'));
+		assertTrue(nfa.addTransition("p", Set.of("p"), '0'));
+		return nfa;
+	}
+
+	@BeforeClass
+	public static void setUpClass() {
+		// As recommended for the JDK HttpServer, see MatchServer.
+		System.setProperty("sun.net.httpserver.nodelay", "true");
+	}
+
+	@Before
+	public void setUp() throws IOException {
+		server = new MatchServer(0);
+		server.register("third", nfa());
+		server.start();
+		client = new LoadGenerator(URI.create("http://localhost:" + server.getPort() + "/"));
+	}
+
+	@After
+	public void tearDown() {
+		client.close();
+		server.stop();
+	}
+
+	@Test
+	public void testAnswers() throws Exception {
+		NFA nfa = nfa();
+		for (String input : new String[] { "e", "", "100", "0100", "0001", "1111", "2100" }) {
+			assertEquals(input, String.valueOf(nfa.accepts(input)), client.request("accepts", "third", input));
+			assertEquals(input, String.valueOf(nfa.maxCopies(input)), client.request("maxCopies", "third", input));
+		}
+		try {
+			client.request("accepts", "missing", "0");
+			fail("unknown automaton answered");
+		} catch (IOException e) {
+			assertTrue(e.getMessage().startsWith("HTTP 404"));
+		}
+	}
+
+	@Test
+	public void testEpsilonInInput() throws Exception {
+		NFA nfa = epsilonNFA();
+		server.register("epsilon", nfa);
+		for (String input : new String[] { "e", "", "0", "0e", "e0", "ee", "00e" }) {
+			assertEquals(input, String.valueOf(nfa.accepts(input)), client.request("accepts", "epsilon", input));
+			assertEquals(input, String.valueOf(nfa.maxCopies(input)), client.request("maxCopies", "epsilon", input));
+		}
+		assertEquals("true", client.request("accepts", "epsilon", "0e"));
+	}
+
+	@Test
+	public void testMappedFile() throws Exception {
+		Path directory = Files.createTempDirectory("automata");
+		Path pruned = directory.resolve("pruned" + MatchServer.EXTENSION);
+		Path full = directory.resolve("full" + MatchServer.EXTENSION);
+		try {
+			CompiledNFA.compile(nfa()).write(pruned);
+			CompiledNFA.compile(nfa(), true).write(full);
+			assertEquals(2, server.loadAll(directory));
+			assertEquals("true", client.request("accepts", "pruned", "0110"));
+			assertEquals("false", client.request("accepts", "pruned", "0011"));
+			try {
+				client.request("maxCopies", "pruned", "0");
+				fail("maxCopies answered without the dead states");
+			} catch (IOException e) {
+				assertTrue(e.getMessage().startsWith("HTTP 400"));
+			}
+
+			NFA nfa = nfa();
+			for (String input : new String[] { "e", "", "100", "0100", "1111", "2100" }) {
+				assertEquals(input, String.valueOf(nfa.accepts(input)), client.request("accepts", "full", input));
+				assertEquals(input, String.valueOf(nfa.maxCopies(input)), client.request("maxCopies", "full", input));
+			}
+		} finally {
+			Files.deleteIfExists(pruned);
+			Files.deleteIfExists(full);
+			Files.deleteIfExists(directory);
+		}
+	}
+
+	@Test
+	public void testConcurrentRequestsAreBatched() throws Exception {
+		// A 5 ms window leaves 32 concurrent callers ample time to meet.
+		MatchServer batching = new MatchServer(0, 256, 5_000_000);
+		batching.register("third", nfa());
+		batching.start();
+		LoadGenerator batchingClient = new LoadGenerator(URI.create("http://localhost:" + batching.getPort() + "/"));
+		try {
+			List<String> inputs = new ArrayList<>();
+			for (int i = 0; i < 64; i++) {
+				inputs.add(Integer.toBinaryString(i));
+			}
+			LoadGenerator.Result result = batchingClient.run("accepts", "third", inputs, 32, 2000);
+			assertEquals(2000, result.getRequestCount());
+			assertEquals(0, result.getErrorCount());
+			assertEquals(2000, batching.getStats().getRequestCount());
+			assertTrue(batching.getStats().toString(), batching.getStats().getBatchCount() < 1000);
+			assertTrue(batching.getStats().getAverageBatchSize() > 2);
+			System.out.println(result);
+			System.out.println(batching.getStats());
+		} finally {
+			batchingClient.close();
+			batching.stop();
+		}
+	}
+
+}
@@ -0,0 +1,100 @@
+package test.nfa;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import fa.nfa.MemoizingAcceptor;
+import fa.nfa.NFA;
+
+/**
+ * Unit tests for the memoizing accepts wrapper.
+ */
+public class MemoizingAcceptorTest {
+
+	/**
+	 * An NFA that counts how often it is actually simulated.
+	 */
+	private static class CountingNFA extends NFA {
+		int calls;
+
+		@Override
+		public boolean accepts(String s) {
+			calls++;
+			return super.accepts(s);
+		}
+	}
+
+	/**
+	 * Builds an NFA for strings over {0, 1} with a 1 in the third position
+	 * from the end.
+	 * @return A sample NFA.
+	 */
+	private CountingNFA nfa() {
+		CountingNFA nfa = new CountingNFA();
+		nfa.addSigma('0');
+		nfa.addSigma('1');
+		for (String name : new String[] { "a", "b", "c", "d" }) {
+			assertTrue(nfa.addState(name));
+		}
+		assertTrue(nfa.setStart("a"));
+		assertTrue(nfa.setFinal("d"));
+		assertTrue(nfa.addTransition("a", Set.of("a"), '0'));
+		assertTrue(nfa.addTransition("a", Set.of("a", "b"), '1'));
+		assertTrue(nfa.addTransition("b", Set.of("c"), '0'));
+		assertTrue(nfa.addTransition("b", Set.of("c"), '1'));
+		assertTrue(nfa.addTransition("c", Set.of("d"), '0'));
+		assertTrue(nfa.addTransition("c", Set.of("d"), '1'));
+		return nfa;
+	}
+
+	@Test
+	public void testResultCache() {
+		CountingNFA nfa = nfa();
+		MemoizingAcceptor memo = new MemoizingAcceptor(nfa, 1 << 16, 8);
+		assertTrue(memo.accepts("0100"));
+		assertTrue(memo.accepts("0100"));
+		assertFalse(memo.accepts("0001"));
+		assertFalse(memo.accepts("0001"));
+		assertEquals(2, nfa.calls);
+		assertEquals(2, memo.getHitCount());
+		assertEquals(2, memo.getMissCount());
+
+		// Long inputs bypass the cache.
+		memo.accepts("0000000000100");
+		memo.accepts("0000000000100");
+		assertEquals(4, nfa.calls);
+	}
+
+	@Test
+	public void testPrefixCache() {
+		NFA nfa = nfa();
+		MemoizingAcceptor memo = MemoizingAcceptor.withPrefixCache(nfa, 1 << 20, 64, 4);
+		String prefix = "0110100111010010";
+		for (String suffix : new String[] { "", "0", "1", "100", "011", "1000", "e" }) {
+			assertEquals(suffix, nfa.accepts(prefix + suffix), memo.accepts(prefix + suffix));
+		}
+		assertTrue(memo.getPrefixHitCount() >= 5);
+		assertEquals(nfa.accepts("e"), memo.accepts("e"));
+	}
+
+	@Test
+	public void testLongSharedPrefix() {
+		NFA nfa = nfa();
+		MemoizingAcceptor memo = MemoizingAcceptor.withPrefixCache(nfa, 1 << 20, 4096, 16);
+		Random random = new Random(5);
+		StringBuilder prefix = new StringBuilder();
+		for (int i = 0; i < 2000; i++) {
+			prefix.append(random.nextBoolean() ? '1' : '0');
+		}
+		for (int i = 0; i < 50; i++) {
+			String input = prefix + Integer.toBinaryString(i);
+			assertEquals(input, nfa.accepts(input), memo.accepts(input));
+		}
+		assertEquals(49, memo.getPrefixHitCount());
+	}
+
+}
@@ -0,0 +1,114 @@
+package test.nfa;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import fa.nfa.NFA;
+import fa.nfa.NFAOptimizer;
+
+/**
+ * Unit tests for the NFAOptimizer pass pipeline. Each pass must shrink
+ * (or keep) the automaton and never change the accepted language.
+ */
+public class NFAOptimizerTest {
+
+	/**
+	 * Builds an NFA for (0|1)*1 padded with redundancy: an unreachable
+	 * state, a dead state, an epsilon cycle and two identical branches.
+	 * @return A redundant sample NFA.
+	 */
+	private NFA redundant() {
+		NFA nfa = new NFA();
+		nfa.addSigma('0');
+		nfa.addSigma('1');
+
+		assertTrue(nfa.addState("s"));
+		assertTrue(nfa.setStart("s"));
+		assertTrue(nfa.addState("c1"));
+		assertTrue(nfa.addState("c2"));
+		assertTrue(nfa.addState("x"));
+		assertTrue(nfa.addState("y"));
+		assertTrue(nfa.addState("dead"));
+		assertTrue(nfa.addState("lost"));
+		assertTrue(nfa.setFinal("x"));
+		assertTrue(nfa.setFinal("y"));
+
+		assertTrue(nfa.addTransition("s", Set.of("c1"), 'e'));
+		assertTrue(nfa.addTransition("c1", Set.of("c2"), 'e'));
+		assertTrue(nfa.addTransition("c2", Set.of("s"), 'e'));
+		assertTrue(nfa.addTransition("s", Set.of("s"), '0'));
+		assertTrue(nfa.addTransition("c1", Set.of("c1"), '1'));
+		assertTrue(nfa.addTransition("c2", Set.of("x", "y", "dead"), '1'));
+		assertTrue(nfa.addTransition("dead", Set.of("dead"), '0'));
+		assertTrue(nfa.addTransition("lost", Set.of("x"), '0'));
+
+		return nfa;
+	}
+
+	/**
+	 * Lists every string over {0, 1} up to the given length.
+	 */
+	private List<String> inputs(int maxLength) {
+		List<String> result = new ArrayList<>();
+		result.add("");
+		for (int i = 0; i < result.size(); i++) {
+			String s = result.get(i);
+			if (s.length() < maxLength) {
+				result.add(s + "0");
+				result.add(s + "1");
+			}
+		}
+		return result;
+	}
+
+	@Test
+	public void testLanguagePreserved() {
+		NFA original = redundant();
+		NFA optimized = new NFAOptimizer().optimize(original);
+		for (String s : inputs(6)) {
+			assertEquals(s, original.accepts(s), optimized.accepts(s));
+		}
+	}
+
+	@Test
+	public void testEpsilonInputPreserved() {
+		// Reading 'e' inside the collapsed epsilon cycle must stay possible.
+		NFA original = redundant();
+		NFA optimized = new NFAOptimizer().optimize(original);
+		for (String s : new String[] { "e", "e1", "0e1", "1e", "ee1", "01e0e1" }) {
+			assertEquals(s, original.accepts(s), optimized.accepts(s));
+		}
+		assertTrue(optimized.accepts("0e1"));
+	}
+
+	@Test
+	public void testStatesRemoved() {
+		NFA original = redundant();
+		NFAOptimizer optimizer = new NFAOptimizer();
+		NFA optimized = optimizer.optimize(original);
+
+		// s/c1/c2 collapse into one state and x/y merge into another.
+		assertEquals(2, optimized.getStates().size());
+		assertEquals(7, original.getStates().size());
+		assertEquals(5, optimizer.getReports().size());
+		assertEquals("trim", optimizer.getReports().get(0).getName());
+		assertEquals(7, optimizer.getReports().get(0).getStatesBefore());
+		assertEquals(5, optimizer.getReports().get(0).getStatesAfter());
+	}
+
+	@Test
+	public void testInputUntouched() {
+		NFA original = redundant();
+		int transitions = original.getTransitionCount();
+		new NFAOptimizer().optimize(original);
+		assertEquals(7, original.getStates().size());
+		assertEquals(transitions, original.getTransitionCount());
+		assertTrue(original.isFinal("y"));
+	}
+
+}
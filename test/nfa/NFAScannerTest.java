@@ -0,0 +1,117 @@
+package test.nfa;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import fa.nfa.NFA;
+import fa.nfa.NFAPrefilter;
+import fa.nfa.NFAScanner;
+
+/**
+ * Unit tests for the prefilter analysis and the substring scanner built
+ * on top of it.
+ */
+public class NFAScannerTest {
+
+	/**
+	 * Builds an NFA for 0*1(0|1)*11, which must start with 0 or 1 and
+	 * must contain 11.
+	 * @return A sample NFA with a required literal.
+	 */
+	private NFA nfa() {
+		NFA nfa = new NFA();
+		nfa.addSigma('0');
+		nfa.addSigma('1');
+
+		assertTrue(nfa.addState("a"));
+		assertTrue(nfa.setStart("a"));
+		assertTrue(nfa.addState("b"));
+		assertTrue(nfa.addState("c"));
+		assertTrue(nfa.addState("d"));
+		assertTrue(nfa.setFinal("d"));
+
+		assertTrue(nfa.addTransition("a", Set.of("a"), '0'));
+		assertTrue(nfa.addTransition("a", Set.of("b"), '1'));
+		assertTrue(nfa.addTransition("b", Set.of("b"), '0'));
+		assertTrue(nfa.addTransition("b", Set.of("b", "c"), '1'));
+		assertTrue(nfa.addTransition("c", Set.of("d"), '1'));
+
+		return nfa;
+	}
+
+	/**
+	 * Finds the leftmost-longest match the slow way, by calling accepts
+	 * on every substring.
+	 */
+	private int[] bruteForce(NFA nfa, String s, int from) {
+		for (int i = from; i <= s.length(); i++) {
+			for (int j = s.length(); j >= i; j--) {
+				String sub = s.substring(i, j);
+				if (!sub.equals("e") && nfa.accepts(sub)) {
+					return new int[] { i, j };
+				}
+			}
+		}
+		return null;
+	}
+
+	@Test
+	public void testPrefilter() {
+		NFAPrefilter prefilter = nfa().getPrefilter();
+		assertEquals("11", prefilter.getRequiredLiteral());
+		assertEquals(Set.of('0', '1'), prefilter.getFirstSymbols());
+		assertFalse(prefilter.acceptsEmpty());
+		assertFalse(prefilter.mayAccept("1010"));
+		assertTrue(prefilter.mayAccept("0110"));
+		assertFalse(prefilter.mayAccept("2110"));
+	}
+
+	@Test
+	public void testFirstSymbols() {
+		NFA nfa = nfa();
+		assertTrue(nfa.addState("x"));
+		assertTrue(nfa.addTransition("x", Set.of("a"), '0'));
+		assertTrue(nfa.setStart("x"));
+		assertEquals(Set.of('0'), nfa.getPrefilter().getFirstSymbols());
+		assertTrue(nfa.accepts("0111"));
+		assertFalse(nfa.accepts("111"));
+	}
+
+	@Test
+	public void testFind() {
+		NFA nfa = nfa();
+		NFAScanner scanner = new NFAScanner(nfa);
+		String[] inputs = { "", "1", "11", "011", "22011", "2101011222", "111", "2121211", "0000" };
+		for (String s : inputs) {
+			for (int from = 0; from <= s.length(); from++) {
+				int[] expected = bruteForce(nfa, s, from);
+				NFAScanner.Match match = scanner.find(s, from);
+				if (expected == null) {
+					assertNull(s, match);
+				} else {
+					assertNotNull(s, match);
+					assertEquals(s, expected[0], match.getStart());
+					assertEquals(s, expected[1], match.getEnd());
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testFindAll() {
+		NFAScanner scanner = new NFAScanner(nfa());
+		List<NFAScanner.Match> matches = scanner.findAll("x111x01111x0111");
+		assertEquals(3, matches.size());
+		assertEquals(1, matches.get(0).getStart());
+		assertEquals(4, matches.get(0).getEnd());
+		assertEquals(5, matches.get(1).getStart());
+		assertEquals(10, matches.get(1).getEnd());
+		assertEquals(11, matches.get(2).getStart());
+		assertEquals(15, matches.get(2).getEnd());
+	}
+
+}
@@ -2,11 +2,16 @@ package test.nfa;
 
 import static org.junit.Assert.*;
 
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
 import java.util.Set;
 
 import org.junit.Test;
 
 import fa.nfa.NFA;
+import fa.nfa.NFAOptimizer;
 import fa.nfa.NFAState;
 
 /**
@@ -325,4 +330,266 @@ public class NFATest {
 		System.out.println("nfa3 maxCopies done");
 	}
 
+	/**
+	 * Builds an NFA for strings starting with 1. Reading 1 first enters an
+	 * accepting sink, reading 0 first enters a rejecting one.
+	 * @return A sample NFA with both kinds of sink.
+	 */
+	private NFA nfa4() {
+		NFA nfa = new NFA();
+
+		nfa.addSigma('0');
+		nfa.addSigma('1');
+
+		assertTrue(nfa.addState("q"));
+		assertTrue(nfa.setStart("q"));
+		assertTrue(nfa.addState("f"));
+		assertTrue(nfa.setFinal("f"));
+		assertTrue(nfa.addState("d"));
+
+		assertTrue(nfa.addTransition("q", Set.of("f"), '1'));
+		assertTrue(nfa.addTransition("q", Set.of("d"), '0'));
+		assertTrue(nfa.addTransition("f", Set.of("f"), '0'));
+		assertTrue(nfa.addTransition("f", Set.of("f"), '1'));
+		assertTrue(nfa.addTransition("d", Set.of("d"), '0'));
+		assertTrue(nfa.addTransition("d", Set.of("d"), '1'));
+
+		return nfa;
+	}
+
+	@Test
+	public void test4_1() {
+		NFA nfa = nfa4();
+		assertTrue(nfa.canStillAccept((NFAState)nfa.getState("q")));
+		assertTrue(nfa.canStillAccept((NFAState)nfa.getState("f")));
+		assertFalse(nfa.canStillAccept((NFAState)nfa.getState("d")));
+		assertTrue(nfa.alwaysAccepts((NFAState)nfa.getState("f")));
+		assertFalse(nfa.alwaysAccepts((NFAState)nfa.getState("q")));
+		assertFalse(nfa.alwaysAccepts((NFAState)nfa.getState("d")));
+		System.out.println("nfa4 state flags done");
+	}
+
+	@Test
+	public void test4_2() {
+		NFA nfa = nfa4();
+		assertTrue(nfa.accepts("1"));
+		assertTrue(nfa.accepts("1000"));
+		assertFalse(nfa.accepts("0111"));
+		assertFalse(nfa.accepts("e"));
+		// A symbol outside the alphabet still rejects after the accepting sink.
+		assertFalse(nfa.accepts("1002"));
+		assertFalse(nfa.accepts("10e"));
+		System.out.println("nfa4 accepts done");
+	}
+
+	@Test
+	public void test4_3() {
+		NFA nfa = nfa4();
+		assertTrue(nfa.accepts("1"));
+		// Flags are recomputed after the automaton changes.
+		assertTrue(nfa.addTransition("d", Set.of("f"), '1'));
+		assertTrue(nfa.canStillAccept((NFAState)nfa.getState("d")));
+		assertTrue(nfa.accepts("01"));
+		System.out.println("nfa4 modification done");
+	}
+
+	/**
+	 * Builds an NFA a -1-> f, b -0-> f starting in a, so moving the start
+	 * state to b changes the language from {1} to {0}.
+	 * @return A sample NFA with two candidate start states.
+	 */
+	private NFA twoStarts() {
+		NFA nfa = new NFA();
+		nfa.addSigma('0');
+		nfa.addSigma('1');
+		assertTrue(nfa.addState("a"));
+		assertTrue(nfa.addState("b"));
+		assertTrue(nfa.addState("f"));
+		assertTrue(nfa.setStart("a"));
+		assertTrue(nfa.setFinal("f"));
+		assertTrue(nfa.addTransition("a", Set.of("f"), '1'));
+		assertTrue(nfa.addTransition("b", Set.of("f"), '0'));
+		return nfa;
+	}
+
+	@Test
+	public void test4_4() {
+		NFA nfa = twoStarts();
+		for (int i = 0; i < 10; i++) {
+			assertTrue(nfa.accepts("1"));
+			assertFalse(nfa.accepts("0"));
+		}
+		assertEquals(Set.of('1'), nfa.getPrefilter().getFirstSymbols());
+		// Moving the start state drops everything derived from the old one.
+		assertTrue(nfa.setStart("b"));
+		assertTrue(nfa.accepts("0"));
+		assertFalse(nfa.accepts("1"));
+		assertEquals(Set.of('0'), nfa.getPrefilter().getFirstSymbols());
+		System.out.println("twoStarts setStart done");
+	}
+
+	/**
+	 * Lists every string over {0, 1} up to the given length.
+	 */
+	private List<String> inputs(int maxLength) {
+		List<String> result = new ArrayList<>();
+		result.add("");
+		for (int i = 0; i < result.size(); i++) {
+			String s = result.get(i);
+			if (s.length() < maxLength) {
+				result.add(s + "0");
+				result.add(s + "1");
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Builds an NFA for strings starting with 0, disjoint from nfa4.
+	 * @return A sample NFA.
+	 */
+	private NFA startsWithZero() {
+		NFA nfa = new NFA();
+		nfa.addSigma('0');
+		nfa.addSigma('1');
+		assertTrue(nfa.addState("s"));
+		assertTrue(nfa.setStart("s"));
+		assertTrue(nfa.addState("t"));
+		assertTrue(nfa.setFinal("t"));
+		assertTrue(nfa.addTransition("s", Set.of("t"), '0'));
+		assertTrue(nfa.addTransition("t", Set.of("t"), '0'));
+		assertTrue(nfa.addTransition("t", Set.of("t"), '1'));
+		return nfa;
+	}
+
+	@Test
+	public void test5_1() {
+		NFA a = nfa1();
+		NFA b = nfa2();
+		String witness = a.findCommonString(b);
+		assertEquals("11", witness);
+		assertTrue(a.accepts(witness));
+		assertTrue(b.accepts(witness));
+
+		NFA product = a.intersect(b);
+		assertFalse(product.isEmpty());
+		for (String s : inputs(6)) {
+			assertEquals(s, a.accepts(s) && b.accepts(s), product.accepts(s));
+		}
+		// An 'e' in the input takes an epsilon move on both sides at once.
+		for (String s : inputs(4)) {
+			for (int i = 0; i <= s.length(); i++) {
+				String t = s.substring(0, i) + "e" + s.substring(i);
+				assertEquals(t, a.accepts(t) && b.accepts(t), product.accepts(t));
+			}
+		}
+
+		NFA x = new NFA();
+		x.addSigma('1');
+		assertTrue(x.addState("p"));
+		assertTrue(x.addState("q"));
+		assertTrue(x.addState("f"));
+		assertTrue(x.setStart("p"));
+		assertTrue(x.setFinal("f"));
+		assertTrue(x.addTransition("p", Set.of("q"), 'e'));
+		assertTrue(x.addTransition("q", Set.of("f"), '1'));
+		assertTrue(x.addTransition("p", Set.of("f"), '1'));
+		NFA y = new NFA();
+		y.addSigma('1');
+		assertTrue(y.addState("s"));
+		assertTrue(y.addState("t"));
+		assertTrue(y.setStart("s"));
+		assertTrue(y.setFinal("t"));
+		assertTrue(y.addTransition("s", Set.of("t"), '1'));
+		assertTrue(x.accepts("e1"));
+		assertFalse(y.accepts("e1"));
+		assertFalse(x.intersect(y).accepts("e1"));
+		assertTrue(x.intersect(y).accepts("1"));
+		System.out.println("nfa1 x nfa2 intersection done");
+	}
+
+	@Test
+	public void test5_2() {
+		NFA a = nfa4();
+		NFA b = startsWithZero();
+		assertFalse(a.isEmpty());
+		assertFalse(b.isEmpty());
+		assertNull(a.findCommonString(b));
+		assertTrue(a.intersect(b).isEmpty());
+
+		NFA empty = new NFA();
+		empty.addSigma('0');
+		assertTrue(empty.addState("p"));
+		assertTrue(empty.addState("r"));
+		assertTrue(empty.setStart("p"));
+		assertTrue(empty.setFinal("r"));
+		assertTrue(empty.isEmpty());
+		System.out.println("emptiness done");
+	}
+
+	@Test
+	public void test6_1() {
+		NFA a = nfa1();
+		NFA b = nfa2();
+		// nfa2 only accepts strings ending in 1, so it is inside nfa1.
+		assertTrue(b.isSubsetOf(a));
+		assertFalse(a.isSubsetOf(b));
+		String witness = a.inclusionCounterexample(b);
+		assertTrue(a.accepts(witness));
+		assertFalse(b.accepts(witness));
+		assertTrue(b.isSubsetOf(a.intersect(b)));
+		System.out.println("nfa1/nfa2 inclusion done");
+	}
+
+	@Test
+	public void test6_2() {
+		NFA a = nfa2();
+		NFA optimized = new NFAOptimizer().optimize(a);
+		assertTrue(a.isEquivalentTo(optimized));
+		assertTrue(optimized.isEquivalentTo(a));
+
+		String witness = nfa4().equivalenceCounterexample(startsWithZero());
+		assertNotNull(witness);
+		assertTrue(nfa4().accepts(witness) != startsWithZero().accepts(witness));
+		System.out.println("nfa2 equivalence done");
+	}
+
+	@Test
+	public void test7_1() {
+		NFA nfa = nfa2();
+		for (int n = 0; n <= 8; n++) {
+			long expected = 0;
+			for (String s : inputs(n)) {
+				if (s.length() == n && nfa.accepts(s)) {
+					expected++;
+				}
+			}
+			assertEquals(BigInteger.valueOf(expected), nfa.countAccepted(n));
+			assertEquals(expected % 7, nfa.getDeterminized().countAcceptedMod(n, 7));
+		}
+		// Strings starting with 1: half of all strings of each length.
+		assertEquals(BigInteger.TWO.pow(99), nfa4().countAccepted(100));
+		System.out.println("nfa2 counting done");
+	}
+
+	@Test
+	public void test7_2() {
+		NFA nfa = nfa2();
+		Random random = new Random(361);
+		for (int i = 0; i < 50; i++) {
+			String s = nfa.sampleAccepted(7, random);
+			assertEquals(7, s.length());
+			assertTrue(s, nfa.accepts(s));
+		}
+		assertNull(startsWithZero().sampleAccepted(0, random));
+
+		// The determinized form follows a change of the start state.
+		NFA moved = twoStarts();
+		assertEquals("1", moved.sampleAccepted(1, random));
+		assertTrue(moved.setStart("b"));
+		assertEquals(BigInteger.ONE, moved.countAccepted(1));
+		assertEquals("0", moved.sampleAccepted(1, random));
+		System.out.println("nfa2 sampling done");
+	}
+
 }
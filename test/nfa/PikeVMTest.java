@@ -0,0 +1,100 @@
+package test.nfa;
+
+import static org.junit.Assert.*;
+
+import java.util.Set;
+
+import org.junit.Test;
+
+import fa.nfa.NFA;
+import fa.nfa.PikeVM;
+
+/**
+ * Unit tests for capture extraction with the Pike VM.
+ */
+public class PikeVMTest {
+
+	/**
+	 * Builds a tagged NFA for a*(b*)c with group 1 around b*.
+	 * @return A sample tagged NFA.
+	 */
+	private NFA field() {
+		NFA nfa = new NFA();
+		nfa.addSigma('a');
+		nfa.addSigma('b');
+		nfa.addSigma('c');
+
+		assertTrue(nfa.addState("s0"));
+		assertTrue(nfa.setStart("s0"));
+		assertTrue(nfa.addState("s1"));
+		assertTrue(nfa.addState("s2"));
+		assertTrue(nfa.addState("s3"));
+		assertTrue(nfa.setFinal("s3"));
+
+		assertTrue(nfa.addTransition("s0", Set.of("s0"), 'a'));
+		assertTrue(nfa.addTaggedTransition("s0", "s1", 2));
+		assertTrue(nfa.addTransition("s1", Set.of("s1"), 'b'));
+		assertTrue(nfa.addTaggedTransition("s1", "s2", 3));
+		assertTrue(nfa.addTransition("s2", Set.of("s3"), 'c'));
+
+		assertFalse(nfa.addTaggedTransition("s1", "s9", 3));
+		assertFalse(nfa.addTaggedTransition("s1", "s2", -1));
+		return nfa;
+	}
+
+	/**
+	 * Builds a tagged NFA for (a*)(a*), where priority decides the split.
+	 * @return A sample ambiguous tagged NFA.
+	 */
+	private NFA split() {
+		NFA nfa = new NFA();
+		nfa.addSigma('a');
+		for (String name : new String[] { "s0", "s1", "s2", "s3", "s4" }) {
+			assertTrue(nfa.addState(name));
+		}
+		assertTrue(nfa.setStart("s0"));
+		assertTrue(nfa.setFinal("s4"));
+
+		assertTrue(nfa.addTaggedTransition("s0", "s1", 2));
+		assertTrue(nfa.addTransition("s1", Set.of("s1"), 'a'));
+		assertTrue(nfa.addTaggedTransition("s1", "s2", 3));
+		assertTrue(nfa.addTaggedTransition("s2", "s3", 4));
+		assertTrue(nfa.addTransition("s3", Set.of("s3"), 'a'));
+		assertTrue(nfa.addTaggedTransition("s3", "s4", 5));
+		return nfa;
+	}
+
+	@Test
+	public void testCapture() {
+		PikeVM vm = new PikeVM(field());
+		PikeVM.Captures captures = vm.match("aabbbc");
+		assertNotNull(captures);
+		assertEquals(2, captures.groupCount());
+		assertEquals(2, captures.getStart(1));
+		assertEquals(5, captures.getEnd(1));
+		assertEquals("bbb", captures.group(1));
+		assertNull(captures.group(0));
+
+		assertEquals("", vm.match("ac").group(1));
+		assertNull(vm.match("abab"));
+	}
+
+	@Test
+	public void testAgreesWithAccepts() {
+		NFA nfa = field();
+		PikeVM vm = new PikeVM(nfa);
+		String[] inputs = { "", "c", "bc", "abc", "cc", "aab", "bbbbc", "acb" };
+		for (String s : inputs) {
+			assertEquals(s, nfa.accepts(s), vm.match(s) != null);
+		}
+	}
+
+	@Test
+	public void testPriority() {
+		PikeVM vm = new PikeVM(split());
+		PikeVM.Captures captures = vm.match("aaa");
+		assertEquals("aaa", captures.group(1));
+		assertEquals("", captures.group(2));
+	}
+
+}